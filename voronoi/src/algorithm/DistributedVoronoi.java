@@ -30,7 +30,6 @@ package algorithm;
 import java.util.ArrayList;
 import java.util.HashMap;
 
-import triangulation.Pnt;
 
 
 public class DistributedVoronoi {
@@ -54,11 +53,16 @@ public class DistributedVoronoi {
         onlyRelevantSites = ignoreIrrelevantSites;
     }
     
+    // keep only the local Voronoi cell (see VoronoiDiagram.setLocalCell)
+    public void setLocalCell(boolean localCell) {
+        diagram.setLocalCell(localCell);
+    }
+    
     // move site local
     public void moveLocal(int x, int y) {
-        diagram.delSite(theSite, theSite.getPos());
+        Location2D oldPos = theSite.getPos();
         theSite.setPos(x, y);
-        diagram.addSite(theSite);
+        diagram.moveSite(theSite, oldPos, false);
         diagram.setMainSite(theSite);
     }
     
@@ -69,19 +73,18 @@ public class DistributedVoronoi {
     
     // safe add new site to diagram
     public boolean addRemote(Site site) {
-        boolean newSite; 
         // ensure that the site do not exist in its position
         if (sites.containsKey(site)) {
             Location2D oldPos = sites.get(site);
             // if site was not moved, do nothing
             if (oldPos.equals(site.getPos()))
                 return false;
-            // otherwise, remove site from its old position before add
+            // otherwise, move site from its old position
             sites.remove(site);
-            diagram.delSite(site, oldPos);
-            newSite = false;
-        } else 
-            newSite = true;
+            if (diagram.moveSite(site, oldPos, onlyRelevantSites))
+                sites.put(site, site.getPos());
+            return false;
+        }
         // put a point representing the site in the diagram
         boolean added;
         if (onlyRelevantSites) 
@@ -90,7 +93,7 @@ public class DistributedVoronoi {
             added = diagram.addSite(site);
         if (added) 
             sites.put(site, site.getPos());
-        return added && newSite;
+        return added;
     }
 
     // safe remove the site form its position
@@ -120,16 +123,15 @@ public class DistributedVoronoi {
 
     // delete irrelevant sites from triangulation and from the controls
     public ArrayList<Site> delIrrelevantSites() {
-        ArrayList<Pnt> farPoints = diagram.delFarFromMainSite();
-        ArrayList<Site> farSites = new ArrayList<Site>();
-        for (Pnt p: farPoints) {
-            for (Site site: sites.keySet()) 
-                if (site.inPosition(p)) 
-                    farSites.add(site);
-        }
+        ArrayList<Site> farSites = diagram.delIrrelevantSites();
         for (Site site: farSites)
             sites.remove(site);
         return farSites;
     }
+
+    // check if there are irrelevant sites to delete
+    public boolean hasIrrelevantSites() {
+        return diagram.hasIrrelevantSites();
+    }
     
 }
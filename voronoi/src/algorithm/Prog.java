@@ -63,6 +63,8 @@ public class Prog extends Program {
 
  // Static irrelevant sites cleanup
     private boolean cleanupIrrelevantSitesPeriodically = true;  
+ // Irrelevant sites cleanup as soon as they appear
+    private boolean cleanupIrrelevantSitesIncrementally = false;
     private boolean forwardPresenceOnAdd = true;
     private boolean announcePresencePeriodically = true;
     private boolean floodOnForwardFail = true;
@@ -90,6 +92,13 @@ public class Prog extends Program {
             boolean cleanupIrrelevantSites) {
         this.cleanupIrrelevantSitesPeriodically = cleanupIrrelevantSites;
     }
+    public void setCleanupIrrelevantSitesIncrementally(
+            boolean cleanupIrrelevantSites) {
+        this.cleanupIrrelevantSitesIncrementally = cleanupIrrelevantSites;
+    }
+    public void setKeepOnlyLocalCell(boolean keepOnlyLocalCell) {
+        diagram.setLocalCell(keepOnlyLocalCell);
+    }
     public void setForwardPresenceOnAdd(boolean confirmPresence) {
         this.forwardPresenceOnAdd = confirmPresence;
     }
@@ -167,6 +176,11 @@ public class Prog extends Program {
                 // a better chance to each remote site to communicate.
                 for (int c = 0; c < in().getSize(); c++) 
                     processMessage(getMessage(c), c);
+                // Clear irrelevant sites as soon as the diagram has any 
+                // (the diagram keeps track of them, so no rescan is needed)
+                if (cleanupIrrelevantSitesIncrementally && 
+                        diagram.hasIrrelevantSites())
+                    clean();
             }
         } finally {
             // Before exit, announced its intention
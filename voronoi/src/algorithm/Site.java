@@ -55,8 +55,8 @@ public class Site {
     }
     
     public boolean inPosition(Pnt p) {
-        Pnt s = new Pnt(loc.getX(), loc.getY());
-        return s.equals(p);
+        return p.dimension() == 2
+                && p.coord(0) == loc.getX() && p.coord(1) == loc.getY();
     }
     
     @Override
@@ -28,16 +28,42 @@
 package algorithm;
 
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 
 import triangulation.DelaunayTriangulation;
+import triangulation.DiagramExporter;
 import triangulation.Pnt;
+import triangulation.StarCursor;
 import triangulation.Triangle;
 
 /**
  * Voroni diagram control for multi-thread application
+ *
+ * In local cell mode (see setLocalCell) only the main site's own cell is
+ * kept: the DT holds the main site, its Delaunay neighbors and the boundary,
+ * and every other site is dropped as soon as it stops being a neighbor.
+ * Memory and the cost of each update then depend on the degree of the main
+ * site, not on how many sites were ever accepted.
+ *
+ * The relevance of the sites is kept up to date as the diagram changes:
+ * the Delaunay neighbors of the main site are recomputed only when an
+ * update may change the star of the main site, and the sites that are not
+ * neighbors are kept aside, so delFarFromMainSite removes just those
+ * instead of scanning the whole triangulation.
+ *
+ * A diagram can be saved to a file and loaded back (see save and load)
+ * without building the triangulation again.
  */
 public class VoronoiDiagram {
 
@@ -54,20 +80,184 @@ public class VoronoiDiagram {
     // this control is the main purpose of this class.
     private HashMap<Pnt, HashSet<Site>> points;
     private String id;
+    private boolean localCell = false;          // Keep only the main cell
+    private ArrayList<Pnt> dropped =            // Dropped in local cell mode,
+            new ArrayList<Pnt>();               // not yet reported
+    private ArrayList<Site> lost =              // Sites of the dropped or
+            new ArrayList<Site>();              // deleted far positions
+    private HashSet<Pnt> neighbors =            // Delaunay neighbors of the
+            new HashSet<Pnt>();                 // main site
+    private LinkedHashSet<Pnt> irrelevant =     // All other positions
+            new LinkedHashSet<Pnt>();
+    private boolean tracked = false;            // neighbors and irrelevant
+                                                // are up to date
+    private StarCursor cursor;                  // Walks around main site
+    private Pnt nearest = null;                 // Last nearestSite answer
+    private static final int SNAPSHOT_MAGIC =   // "VDS1"
+            0x56445331;
 
     /**
      * Create and initialize the DT.
      */
     public VoronoiDiagram(String id) {
-        initialTriangle = new Triangle(
-                new Pnt(-initialSize, -initialSize),
-                new Pnt( initialSize, -initialSize),
-                new Pnt(           0,  initialSize));
+        this(id, false);
+    }
+
+    /**
+     * Create and initialize the DT.
+     * @param unbounded true to use an unbounded DT (ghost triangles around
+     * the convex hull) instead of the initial triangle
+     */
+    public VoronoiDiagram(String id, boolean unbounded) {
+        if (unbounded) {
+            initialTriangle = null;
+            dt = new DelaunayTriangulation();
+        } else {
+            initialTriangle = new Triangle(
+                    new Pnt(-initialSize, -initialSize),
+                    new Pnt( initialSize, -initialSize),
+                    new Pnt(           0,  initialSize));
+            dt = new DelaunayTriangulation(initialTriangle);
+        }
         points = new HashMap<Pnt, HashSet<Site>>();
-        dt = new DelaunayTriangulation(initialTriangle);
+        cursor = new StarCursor(dt);
         this.id = id;
     }
 
+    // diagram over a loaded DT (see load)
+    private VoronoiDiagram(String id, DelaunayTriangulation dt) {
+        this.dt = dt;
+        initialTriangle = dt.getInitialTriangle();
+        points = new HashMap<Pnt, HashSet<Site>>();
+        cursor = new StarCursor(dt);
+        this.id = id;
+    }
+
+    /**
+     * Save the diagram: its id, the local cell flag, the main site, the DT
+     * (see DelaunayTriangulation.writeSnapshot) and the ids of the sites at
+     * each position. The file is written sequentially. Sites dropped or
+     * deleted but not yet reported by delIrrelevantSites are not saved.
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void save(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(id.length());
+            out.writeChars(id);
+            out.writeByte((localCell? 1 : 0) | (mainSite != null? 2 : 0));
+            if (mainSite != null) {
+                out.writeDouble(mainSite.coord(0));
+                out.writeDouble(mainSite.coord(1));
+            }
+            dt.writeSnapshot(out);
+            out.writeInt(points.size());
+            for (Pnt point: points.keySet()) {
+                out.writeDouble(point.coord(0));
+                out.writeDouble(point.coord(1));
+                out.writeInt(points.get(point).size());
+                for (Site site: points.get(point)) out.writeInt(site.getId());
+            }
+        }
+    }
+
+    /**
+     * Find the site that owns a point: a site at the position nearest to
+     * it (the one with the lowest id, if several sites share the position).
+     * The search starts from the answer of the previous query (see
+     * DelaunayTriangulation.nearestSite), so points that arrive close to
+     * each other are answered in a few steps.
+     * @return the site; null if there are no sites
+     */
+    public Site nearestSite(double x, double y) {
+        nearest = dt.nearestSite(x, y, nearest);
+        return siteAt(nearest);
+    }
+
+    /**
+     * Find the site that owns each of many points (see nearestSite). The
+     * points are taken along a Hilbert curve, each search starting from the
+     * previous answer.
+     * @param xs the x coordinates of the points
+     * @param ys the y coordinates of the points
+     * @return the site of each point, in the order of xs and ys
+     */
+    public Site[] nearestSites(double[] xs, double[] ys) {
+        Pnt[] positions = dt.nearestSites(xs, ys);
+        Site[] sites = new Site[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            // Consecutive points often share an answer
+            if (i > 0 && positions[i] == positions[i - 1]) 
+                sites[i] = sites[i - 1];
+            else sites[i] = siteAt(positions[i]);
+        }
+        return sites;
+    }
+
+    // the site with the lowest id at a position; null if none
+    private Site siteAt(Pnt point) {
+        HashSet<Site> sites = (point == null)? null : points.get(point);
+        if (sites == null) return null;
+        Site best = null;
+        for (Site site: sites)
+            if (best == null || site.getId() < best.getId()) best = site;
+        return best;
+    }
+
+    /**
+     * Write the Delaunay edges and the Voronoi cells within a box to a sink,
+     * one at a time (see DiagramExporter), and finish the sink.
+     * @param sink the sink (e.g. DiagramExporter.GeoJsonSink)
+     * @throws IOException if the sink fails
+     */
+    public void export(DiagramExporter.Sink sink, double minX, double minY,
+            double maxX, double maxY) throws IOException {
+        DiagramExporter exporter = new DiagramExporter(dt);
+        exporter.setBounds(minX, minY, maxX, maxY);
+        exporter.export(sink);
+    }
+
+    /**
+     * Load a diagram saved by save. The file is mapped into memory and the
+     * DT is made from its tables, with no site placed again.
+     * @param file the file to read
+     * @return the diagram
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file does not hold a diagram
+     */
+    public static VoronoiDiagram load(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, 
+                    channel.size());
+            if (in.getInt() != SNAPSHOT_MAGIC)
+                throw new IllegalArgumentException("Not a diagram snapshot");
+            char[] id = new char[in.getInt()];
+            in.asCharBuffer().get(id);
+            in.position(in.position() + 2 * id.length);
+            int flags = in.get();
+            Pnt main = null;
+            if ((flags & 2) != 0) main = new Pnt(in.getDouble(), in.getDouble());
+            VoronoiDiagram diagram = new VoronoiDiagram(new String(id), 
+                    DelaunayTriangulation.readSnapshot(in));
+            for (int k = in.getInt(); k > 0; k--) {
+                Pnt point = new Pnt(in.getDouble(), in.getDouble());
+                int count = in.getInt();
+                HashSet<Site> sites = new HashSet<Site>(2 * count);
+                for (int i = 0; i < count; i++)
+                    sites.add(new Site(in.getInt(), 
+                            (int) point.coord(0), (int) point.coord(1)));
+                diagram.points.put(point, sites);
+            }
+            diagram.localCell = (flags & 1) != 0;
+            diagram.mainSite = main;
+            diagram.updateRelevance();
+            return diagram;
+        }
+    }
+
     @Override
     public String toString() {
         return "Process " + id + " @ " + mainSite;
@@ -79,32 +269,74 @@ public class VoronoiDiagram {
     
     public void setMainSite(Site main) {
         Pnt point = new Pnt(main.getPos().getX(), main.getPos().getY());
-        mainSite = point;
+        setMainSite(point);
     }
 
     public void setMainSite(Pnt point) {
+        if (!point.equals(mainSite)) tracked = false;
         mainSite = point;
+        updateRelevance();
+        prune();
+    }
+
+    /**
+     * Turn local cell mode on or off. Turning it on drops at once every site
+     * that is not a Delaunay neighbor of the main site.
+     * @param localCell true to keep only the main site's cell
+     */
+    public void setLocalCell(boolean localCell) {
+        this.localCell = localCell;
+        prune();
+    }
+
+    public boolean isLocalCell() {
+        return localCell;
     }
 
     public Pnt getMainSite() {
         return mainSite;
     }
 
+    /**
+     * @return the initial triangle; null if the DT is unbounded
+     */
     public Triangle getInitialTriangle() {
         return initialTriangle;
     }
 
+    /**
+     * @return true iff there are no Delaunay triangles between sites yet
+     */
     public boolean hasInitialTriangle() {
+        if (initialTriangle == null) return dt.isEmpty();
         return dt.contains(initialTriangle);
     }
+
+    /**
+     * @return true iff triangle touches the boundary of the DT (a vertex of
+     * the initial triangle, or the vertex at infinity)
+     */
+    public boolean isBoundary(Triangle triangle) {
+        if (initialTriangle == null) 
+            return DelaunayTriangulation.isGhost(triangle);
+        return triangle.containsAny(initialTriangle);
+    }
     
     /**
      * CUSTON: add new Voronoi site.
      */
     public boolean addSite(Site site) {
         Pnt point = new Pnt(site.getPos().getX(), site.getPos().getY());
-        if (newPoint(point, site)) 
-            return dt.delaunayPlace(point);;
+        if (newPoint(point, site)) {
+            // Only a site in conflict with the star changes the neighbors
+            boolean relevant = !tracked 
+                    || dt.locateTriangleOf(mainSite, point) != null;
+            boolean placed = dt.delaunayPlace(point);
+            if (relevant) updateRelevance();
+            else if (placed) irrelevant.add(point);
+            prune();
+            return placed && points.containsKey(point);
+        }
         return true;
     }
 
@@ -112,11 +344,18 @@ public class VoronoiDiagram {
      * CUSTON: add new Voronoi site.
      */
     public boolean addRelevantSite(Site site) {
+        // An unbounded DT has no triangles while its sites are collinear
+        if (dt.isEmpty()) 
+            return addSite(site);
         Pnt point = new Pnt(site.getPos().getX(), site.getPos().getY());
         Triangle triangle = dt.locateTriangleOf(mainSite, point);
         if (triangle != null) {
-            if (newPoint(point, site)) 
-                return dt.delaunayPlace(point, triangle);
+            if (newPoint(point, site)) {
+                boolean placed = dt.delaunayPlace(point, triangle);
+                updateRelevance();
+                prune();
+                return placed;
+            }
             return true;
         }
         return false;
@@ -127,16 +366,154 @@ public class VoronoiDiagram {
      */
     public boolean delSite(Site site, Location2D pos) {
         Pnt point = new Pnt(pos.getX(), pos.getY());
-        if (delPoint(point, site)) 
-            return dt.delaunayRemove(point);
+        // Nothing to prune: the cell of the main site can only grow
+        if (delPoint(point, site)) {
+            boolean removed = dt.delaunayRemove(point);
+            irrelevant.remove(point);
+            if (!tracked || neighbors.contains(point) 
+                    || point.equals(mainSite))
+                updateRelevance();
+            return removed;
+        }
         return true;
     }
 
+    /**
+     * CUSTON: move Voronoi site from old position to its current position.
+     * A site alone in its old position is moved inside the triangulation
+     * (see DelaunayTriangulation.delaunayMove); otherwise it is deleted and
+     * added again.
+     * @param onlyRelevant true to drop the site if it no longer affects the
+     * main site
+     * @return true, if the site is in the diagram at its current position
+     */
+    public boolean moveSite(Site site, Location2D oldPos, boolean onlyRelevant) {
+        Pnt from = new Pnt(oldPos.getX(), oldPos.getY());
+        Pnt to = new Pnt(site.getPos().getX(), site.getPos().getY());
+        boolean alone = points.containsKey(from) 
+                && points.get(from).size() == 1 
+                && points.get(from).contains(site);
+        if (!alone || points.containsKey(to) || (onlyRelevant 
+                && !from.equals(mainSite) && !dt.isEmpty()
+                && dt.locateTriangleOf(mainSite, to) == null)) {
+            delSite(site, oldPos);
+            return onlyRelevant? addRelevantSite(site) : addSite(site);
+        }
+        delPoint(from, site);
+        newPoint(to, site);
+        boolean moved = dt.delaunayMove(from, to);
+        // The main site keeps its identity when it moves
+        if (from.equals(mainSite)) mainSite = to;
+        irrelevant.remove(from);
+        updateRelevance();
+        if (tracked && !neighbors.contains(to) && !to.equals(mainSite) 
+                && points.containsKey(to))
+            irrelevant.add(to);
+        prune();
+        return moved && points.containsKey(to);
+    }
+
     /**
      * CUSTON: del all Voronoi sites far form this point.
      */
     public ArrayList<Pnt> delFarFromMainSite() {
-        return delFarFrom(mainSite);
+        ArrayList<Pnt> deleted = delIrrelevant();
+        lost.clear();
+        return deleted;
+    }
+
+    /**
+     * CUSTON: del all Voronoi sites far form main site.
+     * @return the sites that were deleted (or dropped in local cell mode
+     * since the last call)
+     */
+    public ArrayList<Site> delIrrelevantSites() {
+        delIrrelevant();
+        ArrayList<Site> deleted = lost;
+        lost = new ArrayList<Site>();
+        return deleted;
+    }
+
+    /**
+     * @return true iff some sites do not affect the main site (or were
+     * dropped in local cell mode and not yet reported)
+     */
+    public boolean hasIrrelevantSites() {
+        return !irrelevant.isEmpty() || !dropped.isEmpty();
+    }
+
+    // delete the irrelevant sites; in local cell mode, report those dropped
+    private ArrayList<Pnt> delIrrelevant() {
+        if (localCell) {
+            prune();
+            ArrayList<Pnt> deleted = dropped;
+            dropped = new ArrayList<Pnt>();
+            return deleted;
+        }
+        return delIrrelevantPoints();
+    }
+
+    // in local cell mode, drop the sites that are not neighbors of main site
+    private void prune() {
+        if (localCell && mainSite != null)
+            dropped.addAll(delIrrelevantPoints());
+    }
+
+    // delete the positions that are not neighbors of main site; a rebuild
+    // is cheaper when they are the majority
+    private ArrayList<Pnt> delIrrelevantPoints() {
+        if (!tracked || irrelevant.size() > neighbors.size())
+            return delFarFrom(mainSite);
+        ArrayList<Pnt> deleted = new ArrayList<Pnt>(irrelevant);
+        irrelevant.clear();
+        // Far from the main site, so its star does not change
+        for (Pnt point: deleted) {
+            dt.delaunayRemove(point);
+            forget(point);
+        }
+        return deleted;
+    }
+
+    // bring neighbors and irrelevant up to date, after a change that may
+    // have changed the star of main site: the neighbors that left the star
+    // become irrelevant, those that joined it relevant
+    private void updateRelevance() {
+        HashSet<Pnt> star = starOfMainSite();
+        if (star == null) {
+            tracked = false;
+            return;
+        }
+        if (tracked) {
+            for (Pnt point: neighbors)
+                if (!star.contains(point) && points.containsKey(point)) 
+                    irrelevant.add(point);
+            irrelevant.removeAll(star);
+        } else {
+            irrelevant.clear();
+            for (Pnt point: points.keySet())
+                if (!star.contains(point) && !point.equals(mainSite)) 
+                    irrelevant.add(point);
+            tracked = true;
+        }
+        neighbors = star;
+    }
+
+    // positions around main site in the DT; null if main site is not there
+    private HashSet<Pnt> starOfMainSite() {
+        if (mainSite == null || !cursor.reset(mainSite)) return null;
+        HashSet<Pnt> star = new HashSet<Pnt>();
+        while (cursor.next()) {
+            Pnt point = cursor.vertex();
+            // Vertices of the boundary have no sites
+            if (points.containsKey(point)) star.add(point);
+        }
+        return star;
+    }
+
+    // drop a position and keep its sites to report them
+    private void forget(Pnt point) {
+        HashSet<Site> sites = points.remove(point);
+        if (sites != null) lost.addAll(sites);
     }
 
     // try to add new site to diagram by his position
@@ -173,7 +550,9 @@ public class VoronoiDiagram {
         mainSite = main;
         ArrayList<Pnt> deleted = dt.delaunayRemoveFarFrom(main);
         for (Pnt point: deleted)
-            points.remove(point);
+            forget(point);
+        // Only main site, its neighbors and the boundary stay
+        if (tracked) irrelevant.clear();
         return deleted;
     }
     
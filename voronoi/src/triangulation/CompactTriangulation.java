@@ -0,0 +1,672 @@
+package triangulation;
+
+/**
+ * Distributed Voronoi Diagram
+ *
+ *  @author Frederico Martins Biber Sampaio
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2013  Frederico Martins Biber Sampaio
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+*/
+
+import java.nio.IntBuffer;
+import java.util.Collection;
+import java.util.Random;
+
+/**
+ * A 2D Delaunay triangulation kept in off-heap memory, for meshes of
+ * millions of sites (offline analysis) where DelaunayTriangulation, with a
+ * few Java objects per site and per triangle, fills the heap.
+ *
+ * Vertices and triangles are plain numbers (ids). The coordinates of the
+ * vertices (a CoordinateStore, indexed by vertex id) and the vertices and
+ * neighbors of the triangles live in direct buffers, which the garbage
+ * collector does not scan; only scratch arrays bounded by the size of one
+ * update are kept on the heap. Ids of removed vertices and triangles are
+ * reused.
+ *
+ * As DelaunayTriangulation with an initial triangle: all sites must fall
+ * strictly within the initial triangle, whose corners are vertices 0, 1 and
+ * 2. Triangles are counterclockwise and neighbor i is across the edge
+ * opposite vertex i. The in-circle tests break ties by symbolic
+ * perturbation (see Predicates), so the result is the same triangulation
+ * DelaunayTriangulation builds.
+ */
+public class CompactTriangulation {
+
+    // Layout of a triangle: three vertices, three neighbors, a search stamp
+    private static final int VERTEX = 0, NEIGHBOR = 3, MARK = 6, STRIDE = 7;
+    private static final int FREE = -1;         // First vertex of a free
+                                                // triangle (next free in
+                                                // its first neighbor)
+
+    private final CoordinateStore coords;       // Position of each vertex
+    private IntBuffer star;             // A triangle of each vertex
+    private IntBuffer triangles;        // STRIDE ints per triangle
+    private int triangleSlots = 0;      // Triangle ids in use or free
+    private int triangleCount = 0;      // Triangles
+    private int freeTriangle = -1;      // Free triangle list
+    private int recent = 0;             // Start of the next walk
+    private int epoch = 0;              // Stamp of the current search
+    private Random random = new Random();
+
+    // Scratch space reused by every update
+    private int[] cavity = new int[16];
+    private int cavitySize;
+    private int[] pending = new int[16];
+    private int[] edgeFrom = new int[16];       // Boundary of the cavity or
+    private int[] edgeTo = new int[16];         // link polygon of a removed
+    private int[] across = new int[16];         // vertex: edges, the triangle
+    private int[] acrossSlot = new int[16];     // across and its facing slot
+    private int[] created = new int[16];
+    private int[] keys = new int[32];           // Matches new triangles
+    private int[] values = new int[32];
+    private int[] next = new int[16];           // Link polygon (ear clipping)
+    private int[] prev = new int[16];
+
+    /**
+     * All sites must fall within the initial triangle.
+     * @param triangle the initial triangle
+     * @param capacity the expected number of sites (the storage grows as
+     * needed)
+     */
+    public CompactTriangulation (Triangle triangle, int capacity) {
+        int vertices = Math.max(capacity, 16) + 3;
+        coords = new CoordinateStore(vertices);
+        star = CoordinateStore.ints(coords.capacity());
+        triangles = CoordinateStore.ints(STRIDE * 2 * vertices);
+        int a = newVertex(triangle.get(0).coord(0), triangle.get(0).coord(1));
+        int b = newVertex(triangle.get(1).coord(0), triangle.get(1).coord(1));
+        int c = newVertex(triangle.get(2).coord(0), triangle.get(2).coord(1));
+        if (orient(a, b, c) < 0) {
+            int t = b; b = c; c = t;
+        }
+        recent = newTriangle(a, b, c);
+        star.put(a, recent);
+        star.put(b, recent);
+        star.put(c, recent);
+    }
+
+    /* Queries */
+
+    /**
+     * @return the number of vertices (the initial vertices included)
+     */
+    public int numVertices () {
+        return coords.size();
+    }
+
+    /**
+     * @return the number of triangles
+     */
+    public int numTriangles () {
+        return triangleCount;
+    }
+
+    /**
+     * @return an upper bound of the vertex ids in use
+     */
+    public int vertexSlots () {
+        return coords.slots();
+    }
+
+    /**
+     * @return an upper bound of the triangle ids in use
+     */
+    public int triangleSlots () {
+        return triangleSlots;
+    }
+
+    /**
+     * @param vertex a vertex id below vertexSlots()
+     * @return true iff vertex is in use
+     */
+    public boolean isVertex (int vertex) {
+        return coords.contains(vertex);
+    }
+
+    /**
+     * @param triangle a triangle id below triangleSlots()
+     * @return true iff triangle is in use
+     */
+    public boolean isTriangle (int triangle) {
+        return triangles.get(STRIDE * triangle + VERTEX) != FREE;
+    }
+
+    public double x (int vertex) {
+        return coords.x(vertex);
+    }
+
+    public double y (int vertex) {
+        return coords.y(vertex);
+    }
+
+    /**
+     * @param vertex a vertex
+     * @return the position of vertex
+     */
+    public Pnt2D point (int vertex) {
+        return coords.get(vertex);
+    }
+
+    /**
+     * @param vertex a vertex
+     * @return a triangle that has vertex as a vertex
+     */
+    public int triangleOf (int vertex) {
+        return star.get(vertex);
+    }
+
+    /**
+     * @param triangle a triangle
+     * @param index the vertex slot (0, 1 or 2)
+     * @return the vertex at that slot
+     */
+    public int vertex (int triangle, int index) {
+        return triangles.get(STRIDE * triangle + VERTEX + index);
+    }
+
+    /**
+     * @param triangle a triangle
+     * @param index the vertex slot (0, 1 or 2)
+     * @return the neighbor opposite that vertex; -1 if none
+     */
+    public int neighbor (int triangle, int index) {
+        return triangles.get(STRIDE * triangle + NEIGHBOR + index);
+    }
+
+    /**
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the vertex at that position; -1 if there is none
+     */
+    public int vertexAt (double x, double y) {
+        return coords.find(x, y);
+    }
+
+    /**
+     * @see #vertexAt(double, double)
+     */
+    public int vertexAt (Pnt2D point) {
+        return coords.find(point.x, point.y);
+    }
+
+    /**
+     * Locate the triangle with point inside it or on its boundary (a walk
+     * from the last triangle created).
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the triangle; -1 if the point is outside the initial triangle
+     */
+    public int locate (double x, double y) {
+        int triangle = recent;
+        walk:
+        while (true) {
+            int first = random.nextInt(3);
+            for (int k = 0; k < 3; k++) {
+                int i = (first + k) % 3;
+                int a = vertex(triangle, (i + 1) % 3);
+                int b = vertex(triangle, (i + 2) % 3);
+                if (Predicates.orient2D(x(a), y(a), x(b), y(b), x, y) < 0) {
+                    triangle = neighbor(triangle, i);
+                    if (triangle < 0) return -1;
+                    continue walk;
+                }
+            }
+            return triangle;
+        }
+    }
+
+    /**
+     * @see #locate(double, double)
+     */
+    public int locate (Pnt point) {
+        return locate(point.coord(0), point.coord(1));
+    }
+
+    /**
+     * @see #locate(double, double)
+     */
+    public int locate (Pnt2D point) {
+        return locate(point.x, point.y);
+    }
+
+    /* Updates */
+
+    /**
+     * Place a new site into the DT.
+     * Nothing happens if the site matches an existing DT vertex.
+     * @param site the new Pnt
+     * @return true, if site was placed
+     * @throws IllegalArgumentException if site is not inside the initial
+     * triangle
+     */
+    public boolean delaunayPlace (Pnt site) {
+        return insert(site.coord(0), site.coord(1)) >= 0;
+    }
+
+    /**
+     * Place many sites into the DT, in a biased randomized order along a
+     * Hilbert curve (see SpatialSort).
+     * @param sites the new Pnts
+     * @return the number of sites placed
+     * @throws IllegalArgumentException if a site is not inside the initial
+     * triangle
+     */
+    public int delaunayPlaceAll (Collection<? extends Pnt> sites) {
+        int placed = 0;
+        for (Pnt site: SpatialSort.brio(sites, random))
+            if (delaunayPlace(site)) placed++;
+        return placed;
+    }
+
+    /**
+     * Remove a site from DT.
+     * Nothing happens if site don't exists (or is an initial vertex).
+     * @param site the Pnt to remove
+     * @return true, if the site was removed
+     */
+    public boolean delaunayRemove (Pnt site) {
+        int vertex = vertexAt(site.coord(0), site.coord(1));
+        return vertex >= 3 && remove(vertex);
+    }
+
+    /**
+     * Insert a site (Bowyer-Watson: the triangles whose circumcircle holds
+     * the site form a cavity, which is replaced by a fan around the site).
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the new vertex; -1 if there is a vertex at that position
+     * @throws IllegalArgumentException if the position is not inside the
+     * initial triangle
+     */
+    public int insert (double x, double y) {
+        x += 0.0;
+        y += 0.0;
+        if (vertexAt(x, y) >= 0) return -1;
+        int triangle = locate(x, y);
+        if (triangle < 0 || onHull(triangle, x, y))
+            throw new IllegalArgumentException("Site not in initial triangle");
+        // Cavity: inside triangles are stamped epoch, checked ones epoch + 1
+        epoch += 2;
+        cavitySize = 0;
+        int top = 0;
+        addToCavity(triangle);
+        pending[top++] = triangle;
+        while (top > 0) {
+            int t = pending[--top];
+            for (int i = 0; i < 3; i++) {
+                int n = neighbor(t, i);
+                if (n < 0 || mark(n) == epoch || mark(n) == epoch + 1)
+                    continue;
+                if (inCircle(n, x, y)) {
+                    addToCavity(n);
+                    if (top == pending.length) pending = grow(pending);
+                    pending[top++] = n;
+                } else setMark(n, epoch + 1);
+            }
+        }
+        // Boundary edges, in the order of their triangles
+        int edges = 0;
+        for (int k = 0; k < cavitySize; k++) {
+            int t = cavity[k];
+            for (int i = 0; i < 3; i++) {
+                int n = neighbor(t, i);
+                if (n >= 0 && mark(n) == epoch) continue;
+                if (edges == edgeFrom.length) growEdges();
+                edgeFrom[edges] = vertex(t, (i + 1) % 3);
+                edgeTo[edges] = vertex(t, (i + 2) % 3);
+                across[edges] = n;
+                acrossSlot[edges] = (n < 0)? -1 : slotOf(n, t);
+                edges++;
+            }
+        }
+        for (int k = 0; k < cavitySize; k++) freeTriangle(cavity[k]);
+        int site = newVertex(x, y);
+        // Fan of new triangles (site, from, to), linked to each other by
+        // the matching table (keyed by the first vertex of each edge)
+        if (created.length < edges) created = new int[edgeFrom.length];
+        int mask = tableFor(edges);
+        for (int k = 0; k < edges; k++) {
+            int t = newTriangle(site, edgeFrom[k], edgeTo[k]);
+            created[k] = t;
+            connect(t, 0, across[k], acrossSlot[k]);
+            star.put(edgeFrom[k], t);
+            star.put(edgeTo[k], t);
+            int i = edgeFrom[k] & mask;
+            while (keys[i] >= 0) i = (i + 1) & mask;
+            keys[i] = edgeFrom[k];
+            values[i] = t;
+        }
+        for (int k = 0; k < edges; k++) {
+            // The triangle after this one around site starts at edgeTo
+            int i = edgeTo[k] & mask;
+            while (keys[i] != edgeTo[k]) i = (i + 1) & mask;
+            connect(created[k], 1, values[i], 2);
+        }
+        star.put(site, created[0]);
+        recent = created[0];
+        return site;
+    }
+
+    /**
+     * @see #insert(double, double)
+     */
+    public int insert (Pnt2D point) {
+        return insert(point.x, point.y);
+    }
+
+    /**
+     * Remove a vertex: the link polygon around it is triangulated again by
+     * clipping ears (Devillers: the ear whose circle gives the vertex the
+     * smallest power is Delaunay), and any edge left illegal by rounding is
+     * flipped.
+     * @param vertex a vertex, not an initial one
+     * @return true, if the vertex was removed
+     */
+    public boolean remove (int vertex) {
+        if (vertex < 3 || vertex >= coords.slots() || !isVertex(vertex))
+            return false;
+        // Link polygon, counterclockwise, with the triangles across it
+        int start = star.get(vertex);
+        int t = start;
+        int size = 0;
+        do {
+            int s = slotOf(t, vertex, 0);
+            if (size == edgeFrom.length) growEdges();
+            edgeFrom[size] = vertex(t, (s + 1) % 3);
+            int n = neighbor(t, s);
+            across[size] = n;
+            acrossSlot[size] = (n < 0)? -1 : slotOf(n, t);
+            if (size == cavity.length) cavity = grow(cavity);
+            cavity[size++] = t;
+            t = neighbor(t, (s + 1) % 3);
+        } while (t != start);
+        double vx = x(vertex), vy = y(vertex);
+        for (int k = 0; k < size; k++) freeTriangle(cavity[k]);
+        coords.remove(vertex);
+        if (next.length < size) {
+            next = new int[edgeFrom.length];
+            prev = new int[edgeFrom.length];
+        }
+        for (int k = 0; k < size; k++) {
+            next[k] = (k + 1) % size;
+            prev[k] = (k + size - 1) % size;
+        }
+        // Clip ears; node k stands for the edge from link vertex k to the
+        // next one and the triangle across it
+        int made = 0;
+        if (created.length < size) created = new int[edgeFrom.length];
+        int node = 0;
+        for (int left = size; left > 3; left--) {
+            int best = -1;
+            double bestPower = Double.POSITIVE_INFINITY;
+            for (int k = 0, i = node; k < left; k++, i = next[i]) {
+                int a = edgeFrom[i], b = edgeFrom[next[i]];
+                int c = edgeFrom[next[next[i]]];
+                double orient = orient(a, b, c);
+                if (orient <= 0) continue;
+                if (Predicates.orient2D(x(a), y(a), x(c), y(c), vx, vy) < 0)
+                    continue;
+                double power = -Predicates.inCircle2D(x(a), y(a), x(b), y(b),
+                        x(c), y(c), vx, vy) / orient;
+                if (best < 0 || power < bestPower) {
+                    best = i;
+                    bestPower = power;
+                }
+            }
+            if (best < 0) throw new IllegalStateException("No ear");
+            int middle = next[best], last = next[middle];
+            int ear = newTriangle(edgeFrom[best], edgeFrom[middle],
+                    edgeFrom[last]);
+            created[made++] = ear;
+            connect(ear, 2, across[best], acrossSlot[best]);
+            connect(ear, 0, across[middle], acrossSlot[middle]);
+            star.put(edgeFrom[best], ear);
+            star.put(edgeFrom[middle], ear);
+            star.put(edgeFrom[last], ear);
+            // The diagonal replaces the two edges
+            across[best] = ear;
+            acrossSlot[best] = 1;
+            next[best] = last;
+            prev[last] = best;
+            node = best;
+        }
+        int a = node, b = next[a], c = next[b];
+        int ear = newTriangle(edgeFrom[a], edgeFrom[b], edgeFrom[c]);
+        created[made++] = ear;
+        connect(ear, 2, across[a], acrossSlot[a]);
+        connect(ear, 0, across[b], acrossSlot[b]);
+        connect(ear, 1, across[c], acrossSlot[c]);
+        for (int k = 0; k < 3; k++) star.put(vertex(ear, k), ear);
+        recent = ear;
+        legalize(made);
+        return true;
+    }
+
+    /**
+     * Flip the edges between the new triangles until all are Delaunay.
+     * @param made the new triangles are created[0..made)
+     */
+    private void legalize (int made) {
+        int top = 0;
+        for (int k = 0; k < made; k++)
+            for (int i = 0; i < 3; i++) {
+                if (top + 2 > pending.length) pending = grow(pending);
+                pending[top++] = created[k];
+                pending[top++] = i;
+            }
+        while (top > 0) {
+            int slot = pending[--top], t = pending[--top];
+            if (!isTriangle(t)) continue;
+            int n = neighbor(t, slot);
+            if (n < 0) continue;
+            int far = vertex(n, slotOf(n, t));
+            if (!inCircle(t, x(far), y(far))) continue;
+            flip(t, slot);
+            if (top + 8 > pending.length) pending = grow(pending);
+            pending[top++] = t; pending[top++] = 0;
+            pending[top++] = t; pending[top++] = 2;
+            pending[top++] = n; pending[top++] = 0;
+            pending[top++] = n; pending[top++] = 2;
+        }
+    }
+
+    /**
+     * Flip the edge of triangle t opposite a slot. With p = t[slot], q, r
+     * the other vertices of t and o the far vertex of the neighbor n, t
+     * becomes (p, q, o) and n becomes (o, r, p).
+     */
+    private void flip (int t, int slot) {
+        int n = neighbor(t, slot);
+        int facing = slotOf(n, t);
+        int p = vertex(t, slot), q = vertex(t, (slot + 1) % 3);
+        int r = vertex(t, (slot + 2) % 3), o = vertex(n, facing);
+        int tq = neighbor(t, (slot + 1) % 3), tr = neighbor(t, (slot + 2) % 3);
+        int nq = neighbor(n, (facing + 2) % 3);     // Opposite q in n
+        int nr = neighbor(n, (facing + 1) % 3);     // Opposite r in n
+        int tqSlot = (tq < 0)? -1 : slotOf(tq, t);
+        int trSlot = (tr < 0)? -1 : slotOf(tr, t);
+        int nqSlot = (nq < 0)? -1 : slotOf(nq, n);
+        int nrSlot = (nr < 0)? -1 : slotOf(nr, n);
+        setTriangle(t, p, q, o);
+        setTriangle(n, o, r, p);
+        connect(t, 0, nr, nrSlot);
+        connect(t, 1, n, 1);
+        connect(t, 2, tr, trSlot);
+        connect(n, 0, tq, tqSlot);
+        connect(n, 2, nq, nqSlot);
+        star.put(p, t);
+        star.put(q, t);
+        star.put(o, n);
+        star.put(r, n);
+    }
+
+    /* Storage */
+
+    private int newVertex (double x, double y) {
+        int vertex = coords.add(x, y);
+        if (coords.capacity() > star.capacity())
+            star = copy(star, CoordinateStore.ints(coords.capacity()));
+        return vertex;
+    }
+
+    private int newTriangle (int a, int b, int c) {
+        int triangle;
+        if (freeTriangle >= 0) {
+            triangle = freeTriangle;
+            freeTriangle = triangles.get(STRIDE * triangle + NEIGHBOR);
+        } else {
+            if (STRIDE * (triangleSlots + 1) > triangles.capacity())
+                triangles = copy(triangles,
+                        CoordinateStore.ints(2 * triangles.capacity()));
+            triangle = triangleSlots++;
+        }
+        setTriangle(triangle, a, b, c);
+        for (int i = 0; i < 3; i++)
+            triangles.put(STRIDE * triangle + NEIGHBOR + i, -1);
+        triangles.put(STRIDE * triangle + MARK, epoch - 2);
+        triangleCount++;
+        return triangle;
+    }
+
+    private void freeTriangle (int triangle) {
+        triangles.put(STRIDE * triangle + VERTEX, FREE);
+        triangles.put(STRIDE * triangle + NEIGHBOR, freeTriangle);
+        freeTriangle = triangle;
+        triangleCount--;
+    }
+
+    private void setTriangle (int triangle, int a, int b, int c) {
+        int base = STRIDE * triangle + VERTEX;
+        triangles.put(base, a);
+        triangles.put(base + 1, b);
+        triangles.put(base + 2, c);
+    }
+
+    /**
+     * Make t and n neighbors through the given slots (n may be -1).
+     */
+    private void connect (int t, int slot, int n, int nSlot) {
+        triangles.put(STRIDE * t + NEIGHBOR + slot, n);
+        if (n >= 0) triangles.put(STRIDE * n + NEIGHBOR + nSlot, t);
+    }
+
+    private static IntBuffer copy (IntBuffer from, IntBuffer to) {
+        from.clear();
+        to.put(from);
+        to.clear();
+        return to;
+    }
+
+    /* Helpers */
+
+    private int mark (int triangle) {
+        return triangles.get(STRIDE * triangle + MARK);
+    }
+
+    private void setMark (int triangle, int stamp) {
+        triangles.put(STRIDE * triangle + MARK, stamp);
+    }
+
+    private void addToCavity (int triangle) {
+        setMark(triangle, epoch);
+        if (cavitySize == cavity.length) cavity = grow(cavity);
+        cavity[cavitySize++] = triangle;
+    }
+
+    /**
+     * Slot of triangle t whose neighbor is n.
+     */
+    private int slotOf (int t, int n) {
+        for (int i = 0; i < 3; i++)
+            if (neighbor(t, i) == n) return i;
+        throw new IllegalStateException("Not neighbors");
+    }
+
+    /**
+     * Slot of vertex v in triangle t (the unused argument tells it apart
+     * from the neighbor search).
+     */
+    private int slotOf (int t, int v, int unused) {
+        for (int i = 0; i < 3; i++)
+            if (vertex(t, i) == v) return i;
+        throw new IllegalStateException("Not a vertex");
+    }
+
+    private double orient (int a, int b, int c) {
+        return Predicates.orient2D(x(a), y(a), x(b), y(b), x(c), y(c));
+    }
+
+    /**
+     * @return true iff (x, y) is inside the circumcircle of triangle (ties
+     * broken by symbolic perturbation)
+     */
+    private boolean inCircle (int triangle, double x, double y) {
+        int a = vertex(triangle, 0), b = vertex(triangle, 1);
+        int c = vertex(triangle, 2);
+        return Predicates.inCirclePerturbed(x(a), y(a), x(b), y(b),
+                x(c), y(c), x, y) > 0;
+    }
+
+    /**
+     * @return true iff (x, y) lies on an edge of triangle that has no
+     * neighbor (an edge of the initial triangle)
+     */
+    private boolean onHull (int triangle, double x, double y) {
+        for (int i = 0; i < 3; i++) {
+            if (neighbor(triangle, i) >= 0) continue;
+            int a = vertex(triangle, (i + 1) % 3);
+            int b = vertex(triangle, (i + 2) % 3);
+            if (Predicates.orient2D(x(a), y(a), x(b), y(b), x, y) == 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Clear the matching table for n entries.
+     * @return the mask of the table
+     */
+    private int tableFor (int n) {
+        int size = Integer.highestOneBit(Math.max(2 * n, 2) - 1) << 1;
+        if (keys.length < size) {
+            keys = new int[size];
+            values = new int[size];
+        }
+        for (int i = 0; i < size; i++) keys[i] = -1;
+        return size - 1;
+    }
+
+    private void growEdges () {
+        int size = 2 * edgeFrom.length;
+        edgeFrom = java.util.Arrays.copyOf(edgeFrom, size);
+        edgeTo = java.util.Arrays.copyOf(edgeTo, size);
+        across = java.util.Arrays.copyOf(across, size);
+        acrossSlot = java.util.Arrays.copyOf(acrossSlot, size);
+    }
+
+    private static int[] grow (int[] array) {
+        return java.util.Arrays.copyOf(array, 2 * array.length);
+    }
+
+}
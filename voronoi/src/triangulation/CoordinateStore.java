@@ -0,0 +1,223 @@
+package triangulation;
+
+/**
+ * Distributed Voronoi Diagram
+ *
+ *  @author Frederico Martins Biber Sampaio
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2013  Frederico Martins Biber Sampaio
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+*/
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Coordinates of many 2D points, indexed by id, as a structure of arrays:
+ * all the x coordinates in one direct buffer and all the y coordinates in
+ * another, outside the heap. A hash table finds the id of a position.
+ *
+ * Ids are dense: they start at 0 and the ids of removed points are given
+ * again to new points. A free id keeps NaN as its x coordinate and the next
+ * free id as its y coordinate.
+ */
+public final class CoordinateStore {
+
+    private DoubleBuffer xs;            // x coordinate of each id
+    private DoubleBuffer ys;            // y coordinate of each id
+    private IntBuffer table;            // Id + 1 by position; 0 empty,
+                                        // -1 deleted
+    private int slots = 0;              // Ids in use or free
+    private int size = 0;               // Ids in use
+    private int free = -1;              // First free id
+    private int tableUsed = 0;          // Entries of table, deleted included
+
+    /**
+     * @param capacity the expected number of points (the store grows as
+     * needed)
+     */
+    public CoordinateStore (int capacity) {
+        capacity = Math.max(capacity, 16);
+        xs = doubles(capacity);
+        ys = doubles(capacity);
+        table = ints(Integer.highestOneBit(4 * capacity - 1) << 1);
+    }
+
+    static IntBuffer ints (int size) {
+        return ByteBuffer.allocateDirect(4 * size)
+                .order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    static DoubleBuffer doubles (int size) {
+        return ByteBuffer.allocateDirect(8 * size)
+                .order(ByteOrder.nativeOrder()).asDoubleBuffer();
+    }
+
+    /**
+     * @return the number of points
+     */
+    public int size () {
+        return size;
+    }
+
+    /**
+     * @return an upper bound of the ids in use
+     */
+    public int slots () {
+        return slots;
+    }
+
+    /**
+     * @return the number of ids the store holds without growing
+     */
+    public int capacity () {
+        return xs.capacity();
+    }
+
+    /**
+     * @param id an id below slots()
+     * @return true iff id is in use
+     */
+    public boolean contains (int id) {
+        return !Double.isNaN(xs.get(id));
+    }
+
+    public double x (int id) {
+        return xs.get(id);
+    }
+
+    public double y (int id) {
+        return ys.get(id);
+    }
+
+    /**
+     * @param id an id in use
+     * @return the point with that id
+     */
+    public Pnt2D get (int id) {
+        return new Pnt2D(xs.get(id), ys.get(id));
+    }
+
+    /**
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the id of the point at that position; -1 if there is none
+     */
+    public int find (double x, double y) {
+        x += 0.0;                           // No negative zeros
+        y += 0.0;
+        int mask = table.capacity() - 1;
+        for (int i = Pnt2D.hash(x, y) & mask; ; i = (i + 1) & mask) {
+            int entry = table.get(i);
+            if (entry == 0) return -1;
+            if (entry > 0 && xs.get(entry - 1) == x && ys.get(entry - 1) == y)
+                return entry - 1;
+        }
+    }
+
+    /**
+     * @see #find(double, double)
+     */
+    public int find (Pnt2D point) {
+        return find(point.x, point.y);
+    }
+
+    /**
+     * Add a point; the position must not be in the store (see find).
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the id of the new point
+     * @throws IllegalArgumentException if a coordinate is NaN
+     */
+    public int add (double x, double y) {
+        if (Double.isNaN(x) || Double.isNaN(y))
+            throw new IllegalArgumentException("NaN coordinate");
+        x += 0.0;
+        y += 0.0;
+        int id;
+        if (free >= 0) {
+            id = free;
+            free = (int) ys.get(id);
+        } else {
+            if (slots == xs.capacity()) {
+                xs = copy(xs, doubles(2 * slots));
+                ys = copy(ys, doubles(2 * slots));
+            }
+            id = slots++;
+        }
+        xs.put(id, x);
+        ys.put(id, y);
+        size++;
+        if (2 * (tableUsed + 1) > table.capacity()) rehash();
+        int mask = table.capacity() - 1;
+        int i = Pnt2D.hash(x, y) & mask;
+        while (table.get(i) > 0) i = (i + 1) & mask;
+        if (table.get(i) == 0) tableUsed++;
+        table.put(i, id + 1);
+        return id;
+    }
+
+    /**
+     * Remove a point and free its id.
+     * @param id an id in use
+     */
+    public void remove (int id) {
+        int mask = table.capacity() - 1;
+        int i = Pnt2D.hash(xs.get(id), ys.get(id)) & mask;
+        while (table.get(i) != id + 1) i = (i + 1) & mask;
+        table.put(i, -1);
+        xs.put(id, Double.NaN);
+        ys.put(id, free);
+        free = id;
+        size--;
+    }
+
+    /**
+     * Rebuild the table without deleted entries, larger if it is crowded.
+     */
+    private void rehash () {
+        int capacity = table.capacity();
+        if (4 * size > capacity) capacity *= 2;
+        IntBuffer old = table;
+        table = ints(capacity);
+        tableUsed = 0;
+        int mask = capacity - 1;
+        for (int k = 0; k < old.capacity(); k++) {
+            int entry = old.get(k);
+            if (entry <= 0) continue;
+            int i = Pnt2D.hash(xs.get(entry - 1), ys.get(entry - 1)) & mask;
+            while (table.get(i) != 0) i = (i + 1) & mask;
+            table.put(i, entry);
+            tableUsed++;
+        }
+    }
+
+    private static DoubleBuffer copy (DoubleBuffer from, DoubleBuffer to) {
+        from.clear();
+        to.put(from);
+        to.clear();
+        return to;
+    }
+
+}
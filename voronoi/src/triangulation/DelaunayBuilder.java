@@ -0,0 +1,329 @@
+package triangulation;
+
+/**
+ * Distributed Voronoi Diagram
+ *
+ *  @author Frederico Martins Biber Sampaio
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2013  Frederico Martins Biber Sampaio
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+*/
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Divide-and-conquer Delaunay triangulation (Guibas and Stolfi, 1985) that
+ * builds both halves of each split in parallel on a ForkJoinPool.
+ *
+ * The sites are sorted by x (then y) and split recursively; each half is
+ * triangulated independently (its quad-edges are private to its task) and
+ * the halves are merged by the classic rising-bubble step. Below a size
+ * threshold the recursion runs sequentially in the current task.
+ *
+ * The result is an ordinary DelaunayTriangulation of the sites plus the
+ * vertices of the initial triangle, exactly what incremental insertion would
+ * build, so it can be used by VoronoiDiagram and DelaunayPanel and updated
+ * further with delaunayPlace/delaunayRemove. In-circle ties are broken by the
+ * same symbolic perturbation as the incremental code.
+ */
+public class DelaunayBuilder {
+
+    private static final int sequentialSize = 1 << 12;  // No forks below
+
+    private ForkJoinPool pool;                 // Runs the recursion
+
+    /**
+     * Builder that uses a new pool with one worker per processor.
+     */
+    public DelaunayBuilder () {
+        this(new ForkJoinPool());
+    }
+
+    /**
+     * @param pool the pool that runs the recursion
+     */
+    public DelaunayBuilder (ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Build the DT of the sites.
+     * All sites must fall strictly within the initial triangle; repeated
+     * sites are placed once.
+     * @param triangle the initial triangle
+     * @param sites the sites to place
+     * @return the DT of the sites and the initial triangle vertices
+     * @throws IllegalArgumentException if a site is not inside the triangle
+     */
+    public DelaunayTriangulation build (Triangle triangle,
+                                        Collection<? extends Pnt> sites) {
+        if (sites.isEmpty()) return new DelaunayTriangulation(triangle);
+        Pnt a = triangle.get(0), b = triangle.get(1), c = triangle.get(2);
+        Pnt[] corners = {a, b, c};
+        for (Pnt site: sites)
+            if (!site.isInside(corners))
+                throw new IllegalArgumentException("Site outside triangle");
+
+        // Sort by x, then y, and drop repeated sites
+        Pnt[] points = sites.toArray(new Pnt[sites.size() + 3]);
+        points[sites.size()] = a;
+        points[sites.size() + 1] = b;
+        points[sites.size() + 2] = c;
+        Arrays.sort(points, new Comparator<Pnt>() {
+            public int compare (Pnt p, Pnt q) {
+                int r = Double.compare(p.coord(0), q.coord(0));
+                return (r != 0)? r : Double.compare(p.coord(1), q.coord(1));
+            }
+        });
+        int n = 1;
+        for (int i = 1; i < points.length; i++)
+            if (!points[i].equals(points[n-1])) points[n++] = points[i];
+
+        Edge[] hull = pool.invoke(new Task(points, 0, n));
+        return new DelaunayTriangulation(triangle, triangles(hull[0]));
+    }
+
+    /**
+     * Convert the quad-edge mesh into linked Triangles.
+     * @param start any edge of the mesh
+     * @return the triangles (the bounded faces of the mesh)
+     */
+    private static List<Triangle> triangles (Edge start) {
+        // Collect every primal directed edge
+        List<Edge> edges = new ArrayList<Edge>();
+        Deque<Edge> stack = new ArrayDeque<Edge>();
+        start.visited = start.sym().visited = true;
+        stack.push(start);
+        while (!stack.isEmpty()) {
+            Edge e = stack.pop();
+            edges.add(e);
+            edges.add(e.sym());
+            visit(e.next, stack);
+            visit(e.sym().next, stack);
+        }
+        // Each counterclockwise face cycle of three edges is a triangle
+        List<Triangle> triangles = new ArrayList<Triangle>(edges.size() / 3);
+        for (Edge e: edges) {
+            if (e.face != null) continue;
+            Edge e1 = e.lNext(), e2 = e1.lNext();
+            if (e2.lNext() != e) continue;
+            if (Predicates.orient2D(e.org.coord(0), e.org.coord(1),
+                    e1.org.coord(0), e1.org.coord(1),
+                    e2.org.coord(0), e2.org.coord(1)) <= 0)
+                continue;                     // The outer face
+            Triangle triangle = new Triangle(e.org, e1.org, e2.org);
+            e.face = e1.face = e2.face = triangle;
+            triangles.add(triangle);
+        }
+        // The neighbor across each edge is the face to the right of it
+        for (Edge e: edges) {
+            if (e.face == null) continue;
+            int slot = e.face.indexOf(e.lNext().dest());
+            e.face.neighbors[slot] = e.sym().face;
+        }
+        return triangles;
+    }
+
+    private static void visit (Edge e, Deque<Edge> stack) {
+        if (e.visited) return;
+        e.visited = e.sym().visited = true;
+        stack.push(e);
+    }
+
+    /**
+     * Triangulation of points[lo..hi) (sorted, distinct, at least 2).
+     * The result is {ldo, rdo}: the counterclockwise convex hull edge out of
+     * the leftmost vertex and the clockwise hull edge out of the rightmost.
+     */
+    @SuppressWarnings("serial")
+    private static class Task extends RecursiveTask<Edge[]> {
+        private final Pnt[] points;
+        private final int lo, hi;
+
+        Task (Pnt[] points, int lo, int hi) {
+            this.points = points;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected Edge[] compute () {
+            return triangulate(lo, hi);
+        }
+
+        private Edge[] triangulate (int lo, int hi) {
+            int n = hi - lo;
+            if (n == 2) {
+                Edge a = Edge.make(points[lo], points[lo+1]);
+                return new Edge[] {a, a.sym()};
+            }
+            if (n == 3) {
+                Pnt s1 = points[lo], s2 = points[lo+1], s3 = points[lo+2];
+                Edge a = Edge.make(s1, s2);
+                Edge b = Edge.make(s2, s3);
+                Edge.splice(a.sym(), b);
+                if (ccw(s1, s2, s3)) {
+                    Edge.connect(b, a);
+                    return new Edge[] {a, b.sym()};
+                }
+                if (ccw(s1, s3, s2)) {
+                    Edge c = Edge.connect(b, a);
+                    return new Edge[] {c.sym(), c};
+                }
+                return new Edge[] {a, b.sym()};      // Collinear
+            }
+            int mid = (lo + hi) >>> 1;
+            Edge[] left, right;
+            if (n > sequentialSize) {
+                Task leftTask = new Task(points, lo, mid);
+                leftTask.fork();
+                right = new Task(points, mid, hi).compute();
+                left = leftTask.join();
+            } else {
+                left = triangulate(lo, mid);
+                right = triangulate(mid, hi);
+            }
+            return merge(left[0], left[1], right[0], right[1]);
+        }
+
+        private static Edge[] merge (Edge ldo, Edge ldi, Edge rdi, Edge rdo) {
+            // Lower common tangent of the two hulls
+            while (true) {
+                if (leftOf(rdi.org, ldi)) ldi = ldi.lNext();
+                else if (rightOf(ldi.org, rdi)) rdi = rdi.rPrev();
+                else break;
+            }
+            Edge basel = Edge.connect(rdi.sym(), ldi);
+            if (ldi.org == ldo.org) ldo = basel.sym();
+            if (rdi.org == rdo.org) rdo = basel;
+            // Rise through the seam, deleting edges that are no longer
+            // Delaunay and adding cross edges
+            while (true) {
+                Edge lcand = basel.sym().next;
+                if (valid(lcand, basel)) {
+                    while (inCircle(basel.dest(), basel.org, lcand.dest(),
+                                    lcand.next.dest())) {
+                        Edge t = lcand.next;
+                        Edge.delete(lcand);
+                        lcand = t;
+                    }
+                }
+                Edge rcand = basel.oPrev();
+                if (valid(rcand, basel)) {
+                    while (inCircle(basel.dest(), basel.org, rcand.dest(),
+                                    rcand.oPrev().dest())) {
+                        Edge t = rcand.oPrev();
+                        Edge.delete(rcand);
+                        rcand = t;
+                    }
+                }
+                boolean lvalid = valid(lcand, basel);
+                boolean rvalid = valid(rcand, basel);
+                if (!lvalid && !rvalid) break;
+                if (!lvalid || (rvalid && inCircle(lcand.dest(), lcand.org,
+                                                   rcand.org, rcand.dest())))
+                    basel = Edge.connect(rcand, basel.sym());
+                else
+                    basel = Edge.connect(basel.sym(), lcand.sym());
+            }
+            return new Edge[] {ldo, rdo};
+        }
+
+        private static boolean ccw (Pnt a, Pnt b, Pnt c) {
+            return Predicates.orient2D(a.coord(0), a.coord(1), b.coord(0),
+                    b.coord(1), c.coord(0), c.coord(1)) > 0;
+        }
+
+        private static boolean rightOf (Pnt x, Edge e) {
+            return ccw(x, e.dest(), e.org);
+        }
+
+        private static boolean leftOf (Pnt x, Edge e) {
+            return ccw(x, e.org, e.dest());
+        }
+
+        private static boolean valid (Edge e, Edge basel) {
+            return rightOf(e.dest(), basel);
+        }
+
+        private static boolean inCircle (Pnt a, Pnt b, Pnt c, Pnt d) {
+            return Predicates.inCirclePerturbed(a.coord(0), a.coord(1),
+                    b.coord(0), b.coord(1), c.coord(0), c.coord(1),
+                    d.coord(0), d.coord(1)) > 0;
+        }
+    }
+
+    /**
+     * Directed edge of a quad-edge structure (one of its four rotations).
+     */
+    private static class Edge {
+        Edge rot;                   // This edge rotated 90 degrees ccw
+        Edge next;                  // Next edge ccw around the origin
+        Pnt org;                    // Origin (null for dual edges)
+        Triangle face;              // Triangle to the left (conversion only)
+        boolean visited;            // Conversion traversal mark
+
+        static Edge make (Pnt org, Pnt dest) {
+            Edge q0 = new Edge(), q1 = new Edge();
+            Edge q2 = new Edge(), q3 = new Edge();
+            q0.rot = q1; q1.rot = q2; q2.rot = q3; q3.rot = q0;
+            q0.next = q0; q1.next = q3; q2.next = q2; q3.next = q1;
+            q0.org = org;
+            q2.org = dest;
+            return q0;
+        }
+
+        static void splice (Edge a, Edge b) {
+            Edge alpha = a.next.rot, beta = b.next.rot;
+            Edge t = a.next; a.next = b.next; b.next = t;
+            t = alpha.next; alpha.next = beta.next; beta.next = t;
+        }
+
+        static Edge connect (Edge a, Edge b) {
+            Edge e = make(a.dest(), b.org);
+            splice(e, a.lNext());
+            splice(e.sym(), b);
+            return e;
+        }
+
+        static void delete (Edge e) {
+            splice(e, e.oPrev());
+            splice(e.sym(), e.sym().oPrev());
+        }
+
+        Edge sym () {return rot.rot;}
+        Edge rotInv () {return rot.rot.rot;}
+        Edge oPrev () {return rot.next.rot;}
+        Edge lNext () {return rotInv().next.rot;}
+        Edge rPrev () {return sym().next;}
+        Pnt dest () {return sym().org;}
+    }
+
+}
@@ -20,13 +20,24 @@ package triangulation;
  * DEALINGS IN THE SOFTWARE.
  */
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.AbstractSet;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
 import java.util.Set;
 
 /**
@@ -50,25 +61,97 @@ import java.util.Set;
  * Modified by Frederico Sampaio at September 2013: 
  * Remove site method for simulate distributed Voronoi algorithm.
  *
+ * Modified by Frederico Sampaio: the triangle graph was replaced by the
+ * neighbor slots of each Triangle (neighbor i is opposite vertex i) and the
+ * triangles are kept in an indexed list, so neighbor queries, membership and
+ * star walks need no hashing and no per-triangle collections. Each vertex
+ * keeps a reference to one incident triangle, so finding the star of a site
+ * needs no walk.
+ *
+ * Modified by Frederico Sampaio: unbounded mode (see the no-argument
+ * constructor). Instead of a large initial triangle, each convex hull edge
+ * gets a ghost triangle whose third vertex is the symbolic INFINITE vertex.
+ * Sites may then lie anywhere, and no predicate sees huge coordinates.
+ *
+ * Modified by Frederico Sampaio: transactions (see beginTransaction). The
+ * triangles added and removed by each update are logged, so a speculative
+ * change can be undone in time proportional to its size.
+ *
+ * Modified by Frederico Sampaio: nearest site queries (see nearestSite),
+ * walking the Delaunay edges from a hint.
+ *
+ * Modified by Frederico Sampaio: snapshots (see writeSnapshot). A DT is
+ * written as flat tables of vertices and triangles and read back without
+ * placing any site again.
+ *
  */
 public class DelaunayTriangulation extends AbstractSet<Triangle> {
 
+    /**
+     * The vertex at infinity shared by the ghost triangles of an unbounded
+     * DT. A ghost triangle (a, b, INFINITE), taken in cyclic order, stands
+     * for the open half-plane to the left of hull edge a->b.
+     */
+    public static final Pnt INFINITE =
+            new Pnt(Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+
+    private static final int SNAPSHOT_MAGIC = 0x44545331;   // "DTS1"
+
     private Triangle mostRecent = null;      // Most recently "active" triangle
-    private Graph<Triangle> triGraph;        // Holds triangles for navigation
-    Triangle initialTriangle = null;
+    private List<Triangle> triangles;        // All triangles (by Triangle.index)
+    private List<Triangle> triangleView;     // Unmodifiable view of triangles
+    private Map<Pnt, Triangle> incident;     // Vertex -> a triangle using it
+    private boolean jumpAndWalk = false;     // Sample a start for locate()
+    private Random random = new Random();    // Source of the samples
+    private long locateCount = 0;            // Calls to locate()
+    private long walkSteps = 0;              // Triangles visited by walks
+    private long fallbackCount = 0;          // Walks that ended in a scan
+    private long modCount = 0;               // Triangles added or removed
+    private Map<Pnt, Pnt[]> cells =          // Cached Voronoi cells
+            new HashMap<Pnt, Pnt[]>();
+
+    // Scratch space reused by every insertion (see getCavity and update)
+    private int epoch = 0;                   // Stamp of the current search
+    private Triangle[] cavity = new Triangle[16];   // Cavity triangles
+    private int cavitySize = 0;
+    private Triangle[] pending = new Triangle[16];  // Triangles to check
+    private Triangle[] created = new Triangle[16];  // New triangles
+    private Pnt[] openKeys = new Pnt[32];    // Edge matching table: first
+    private Triangle[] openValues =          // vertex of each new triangle
+            new Triangle[32];                // still missing a neighbor
+    Triangle initialTriangle = null;         // Null if unbounded
+    private int ghostCount = 0;              // Ghost triangles
+    private Set<Pnt> collinear =             // Unbounded DT sites, before
+            new LinkedHashSet<Pnt>();        // three are not collinear
+    private StarIndex starIndex =            // Circumdisks around the
+            new StarIndex();                 // last locateTriangleOf site
+    private List<Change> log = null;         // Undo log of the transaction
+    private StarCursor cursor =              // Walks around a vertex
+            new StarCursor(this);
     //private Pnt mainSite = null;                      // The Main site 
     //private List<TriangleControl> mainControl = null;  // Main site control
-    private Pnt [] nullPnt = new Pnt[0];
     
 
+    /**
+     * Entry of the undo log: a triangle that was added, a triangle that was
+     * removed (with its neighbors at that time), or the whole state that a
+     * rebuild or a change to the collinear sites replaced.
+     */
+    private static class Change {
+        Triangle triangle;          // Added or removed triangle
+        Triangle[] neighbors;       // Null if the triangle was added
+        List<Triangle> triangles;   // Replaced state (triangle is null)
+        Map<Pnt, Triangle> incident;
+        Set<Pnt> collinear;
+        int ghostCount;
+    }
+
     private class TriangleControl {
         public Triangle triangle;
         public Pnt point;
-        public boolean newTriangle;
         TriangleControl(Triangle triangle, Pnt point) {
             this.triangle = triangle;
             this.point = point;
-            this.newTriangle = false;
         }
     }
 
@@ -77,12 +160,272 @@ public class DelaunayTriangulation extends AbstractSet<Triangle> {
      * @param triangle the initial triangle
      */
     public DelaunayTriangulation (Triangle triangle) {
-        triGraph = new Graph<Triangle>();
-        triGraph.add(triangle);
+        triangles = new ArrayList<Triangle>();
+        triangleView = Collections.unmodifiableList(triangles);
+        incident = new HashMap<Pnt, Triangle>();
+        addTriangle(triangle);
         mostRecent = triangle;
         initialTriangle = triangle;
     }
 
+    /**
+     * Unbounded DT: sites may lie anywhere. The convex hull is closed by
+     * ghost triangles sharing the INFINITE vertex, which are members of the
+     * DT like any other triangle (see isGhost). There are no triangles until
+     * three sites that are not collinear have been placed.
+     */
+    public DelaunayTriangulation () {
+        triangles = new ArrayList<Triangle>();
+        triangleView = Collections.unmodifiableList(triangles);
+        incident = new HashMap<Pnt, Triangle>();
+    }
+
+    /**
+     * Wrap triangles that already form the DT of their vertices (used by
+     * DelaunayBuilder).
+     * @param triangle the initial triangle (its vertices are the DT hull)
+     * @param triangles the triangles, with their neighbor slots linked
+     */
+    DelaunayTriangulation (Triangle triangle, List<Triangle> triangles) {
+        this.triangles = new ArrayList<Triangle>(triangles.size());
+        triangleView = Collections.unmodifiableList(this.triangles);
+        incident = new HashMap<Pnt, Triangle>(triangles.size());
+        for (Triangle tri: triangles) addTriangle(tri);
+        mostRecent = this.triangles.get(0);
+        initialTriangle = triangle;
+    }
+
+    /**
+     * Build the DT of many sites at once (bulk load). The sites are inserted
+     * in a biased randomized order along a Hilbert curve (see SpatialSort),
+     * so each locate walk starts close to its target.
+     * All sites must fall within the initial triangle.
+     * @param triangle the initial triangle
+     * @param sites the sites to place
+     * @throws IllegalArgumentException if a site does not lie in any triangle
+     */
+    public DelaunayTriangulation (Triangle triangle,
+                                  Collection<? extends Pnt> sites) {
+        this(triangle);
+        delaunayPlaceAll(sites);
+    }
+
+    /**
+     * Find the site nearest to a point: the site whose Voronoi cell holds
+     * it. The search walks the Delaunay edges from a hint, always to the
+     * neighbor nearest to the point; a vertex that is not the nearest has a
+     * Delaunay neighbor nearer than itself, so the walk stops at the
+     * answer, after a number of steps that grows with the distance from the
+     * hint. If the walk ends at a vertex of the initial triangle, the nearest
+     * site is one of the neighbors of those vertices.
+     * @param x the x coordinate of the point
+     * @param y the y coordinate of the point
+     * @param hint a site to start from, usually the answer for a nearby
+     * point (null, or not a vertex, to start from the last active triangle)
+     * @return the nearest site (never INFINITE nor a vertex of the initial
+     * triangle); null if there are no sites
+     */
+    public Pnt nearestSite (double x, double y, Pnt hint) {
+        if (triangles.isEmpty()) {
+            // Unbounded DT with collinear sites only
+            Pnt best = null;
+            double least = Double.POSITIVE_INFINITY;
+            for (Pnt site: collinear) {
+                double d = distanceSquared(site, x, y);
+                if (d < least) {
+                    least = d;
+                    best = site;
+                }
+            }
+            return best;
+        }
+        Pnt current = hint;
+        if (current == null || current == INFINITE ||
+                !incident.containsKey(current)) {
+            current = mostRecent.get(0);
+            if (current == INFINITE) current = mostRecent.get(1);
+        }
+        double least = distanceSquared(current, x, y);
+        while (true) {
+            Pnt best = current;
+            cursor.reset(current);
+            while (cursor.next()) {
+                Pnt vertex = cursor.vertex();
+                if (vertex == INFINITE) continue;
+                double d = distanceSquared(vertex, x, y);
+                if (d < least) {
+                    least = d;
+                    best = vertex;
+                }
+            }
+            if (best == current) break;
+            current = best;
+        }
+        if (isUnbounded() || !initialTriangle.contains(current))
+            return current;
+        // Without the initial vertices the point falls in the cell of one of
+        // their neighbors; their stars are open, so each is walked both ways
+        Pnt best = null;
+        least = Double.POSITIVE_INFINITY;
+        for (Pnt corner: initialTriangle) {
+            Triangle start = incident.get(corner);
+            int slot = start.indexOf(corner);
+            for (int side = 1; side <= 2; side++) {
+                Triangle triangle = start;
+                Pnt guide = start.get((slot + side) % 3);
+                while (triangle != null) {
+                    for (int i = 0; i < 3; i++) {
+                        Pnt vertex = triangle.get(i);
+                        if (initialTriangle.contains(vertex)) continue;
+                        double d = distanceSquared(vertex, x, y);
+                        if (d < least) {
+                            least = d;
+                            best = vertex;
+                        }
+                    }
+                    int next = triangle.indexOf(guide);
+                    guide = triangle.get(3 - triangle.indexOf(corner) - next);
+                    triangle = triangle.neighbors[next];
+                    if (triangle == start) break;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Find the nearest site of many points (see nearestSite). The points are
+     * taken along a Hilbert curve (see SpatialSort) and each search starts at
+     * the answer for the previous point, so on a coherent batch each search
+     * takes a few steps.
+     * @param xs the x coordinates of the points
+     * @param ys the y coordinates of the points
+     * @return the nearest site of each point, in the order of xs and ys
+     */
+    public Pnt[] nearestSites (double[] xs, double[] ys) {
+        Pnt[] result = new Pnt[xs.length];
+        Pnt hint = null;
+        for (int i: SpatialSort.hilbertOrder(xs, ys)) {
+            hint = nearestSite(xs[i], ys[i], hint);
+            result[i] = hint;
+        }
+        return result;
+    }
+
+    /**
+     * Write a snapshot of this 2D DT, to be loaded by readSnapshot.
+     * Layout (big-endian): magic, unbounded flag (byte), vertex count and
+     * the x, y of each vertex, the initial triangle (three vertex numbers,
+     * if bounded), the sites of an unbounded DT that has no triangles yet
+     * (count and vertex numbers), triangle count and, for each triangle,
+     * its three vertex numbers and then its three neighbors (triangle
+     * numbers). INFINITE and missing neighbors are written as -1.
+     * @param out the sink, written sequentially
+     * @throws IOException if out fails
+     */
+    public void writeSnapshot (DataOutput out) throws IOException {
+        Map<Pnt, Integer> numbers = new HashMap<Pnt, Integer>(
+                2 * (incident.size() + collinear.size()));
+        List<Pnt> vertices = new ArrayList<Pnt>(incident.size());
+        for (Pnt vertex: incident.keySet())
+            if (vertex != INFINITE) {
+                numbers.put(vertex, vertices.size());
+                vertices.add(vertex);
+            }
+        for (Pnt vertex: collinear) {
+            numbers.put(vertex, vertices.size());
+            vertices.add(vertex);
+        }
+        numbers.put(INFINITE, -1);
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeByte(isUnbounded()? 1 : 0);
+        out.writeInt(vertices.size());
+        // The tables go out in blocks, not one number per call
+        ByteBuffer block = ByteBuffer.allocate(24 * 1024);
+        for (Pnt vertex: vertices) {
+            if (block.remaining() < 16) flush(block, out);
+            block.putDouble(vertex.coord(0));
+            block.putDouble(vertex.coord(1));
+        }
+        flush(block, out);
+        if (!isUnbounded())
+            for (Pnt vertex: initialTriangle) out.writeInt(numbers.get(vertex));
+        out.writeInt(collinear.size());
+        for (Pnt vertex: collinear) out.writeInt(numbers.get(vertex));
+        out.writeInt(triangles.size());
+        for (Triangle triangle: triangles) {
+            if (block.remaining() < 24) flush(block, out);
+            for (int i = 0; i < 3; i++)
+                block.putInt(numbers.get(triangle.get(i)));
+            for (int i = 0; i < 3; i++) {
+                Triangle neighbor = triangle.neighbors[i];
+                block.putInt((neighbor == null)? -1 : neighbor.index);
+            }
+        }
+        flush(block, out);
+    }
+
+    private static void flush (ByteBuffer block, DataOutput out)
+            throws IOException {
+        out.write(block.array(), 0, block.position());
+        block.clear();
+    }
+
+    /**
+     * Read a DT written by writeSnapshot. The triangles are made straight
+     * from the tables (no site is placed), so loading takes time linear in
+     * the size of the DT. Pass a buffer from FileChannel.map to read a file
+     * without copying it first.
+     * @param in the snapshot, from its current position (which is left
+     * after the snapshot)
+     * @return the DT
+     * @throws IllegalArgumentException if in does not hold a DT snapshot
+     */
+    public static DelaunayTriangulation readSnapshot (ByteBuffer in) {
+        if (in.getInt() != SNAPSHOT_MAGIC)
+            throw new IllegalArgumentException("Not a DT snapshot");
+        boolean unbounded = in.get() != 0;
+        Pnt[] vertices = new Pnt[in.getInt()];
+        for (int i = 0; i < vertices.length; i++)
+            vertices[i] = new Pnt(in.getDouble(), in.getDouble());
+        DelaunayTriangulation dt = new DelaunayTriangulation();
+        dt.incident = new HashMap<Pnt, Triangle>(2 * vertices.length + 2);
+        Pnt[] corners = null;
+        if (!unbounded)
+            corners = new Pnt[] {vertices[in.getInt()],
+                    vertices[in.getInt()], vertices[in.getInt()]};
+        for (int k = in.getInt(); k > 0; k--)
+            dt.collinear.add(vertices[in.getInt()]);
+        Triangle[] triangles = new Triangle[in.getInt()];
+        dt.triangles = new ArrayList<Triangle>(triangles.length);
+        dt.triangleView = Collections.unmodifiableList(dt.triangles);
+        int[] table = new int[6 * triangles.length];
+        in.asIntBuffer().get(table);
+        in.position(in.position() + 4 * table.length);
+        for (int t = 0; t < triangles.length; t++) {
+            Pnt[] vertex = new Pnt[3];
+            for (int i = 0; i < 3; i++) {
+                int number = table[6 * t + i];
+                vertex[i] = (number < 0)? INFINITE : vertices[number];
+            }
+            triangles[t] = new Triangle(vertex[0], vertex[1], vertex[2]);
+            dt.addTriangle(triangles[t]);
+        }
+        for (int t = 0; t < triangles.length; t++)
+            for (int i = 0; i < 3; i++) {
+                int number = table[6 * t + 3 + i];
+                triangles[t].neighbors[i] =
+                        (number < 0)? null : triangles[number];
+            }
+        if (triangles.length > 0) dt.mostRecent = triangles[0];
+        if (!unbounded) {
+            // The initial triangle itself, while no site has split it
+            if (triangles.length == 1) dt.initialTriangle = triangles[0];
+            else dt.initialTriangle = new Triangle(corners);
+        }
+        return dt;
+    }
+
     public void print() {
         System.out.println("--------------------------------");
         for (Triangle tri: this) {
@@ -98,12 +441,12 @@ public class DelaunayTriangulation extends AbstractSet<Triangle> {
 
     @Override
     public Iterator<Triangle> iterator () {
-        return triGraph.nodeSet().iterator();
+        return triangleView.iterator();
     }
 
     @Override
     public int size () {
-        return triGraph.nodeSet().size();
+        return triangles.size();
     }
 
     @Override
@@ -111,13 +454,160 @@ public class DelaunayTriangulation extends AbstractSet<Triangle> {
         return "Triangulation with " + size() + " triangles";
     }
 
+    /**
+     * Turn the jump-and-walk point location on or off. When on, locate()
+     * starts its walk from the closest of about n^(1/3) randomly sampled
+     * triangles (or the most recent triangle, if closer) instead of always
+     * from the most recent triangle. This helps when queries are far from
+     * the last change, as with sites inserted in random order.
+     * @param enabled true to sample a starting triangle
+     */
+    public void setJumpAndWalk (boolean enabled) {
+        jumpAndWalk = enabled;
+    }
+
+    /**
+     * @return the number of locate() calls since the last reset
+     */
+    public long getLocateCount () {
+        return locateCount;
+    }
+
+    /**
+     * @return the number of triangles visited by locate() walks since the
+     * last reset (divide by getLocateCount() for the mean walk length)
+     */
+    public long getWalkSteps () {
+        return walkSteps;
+    }
+
+    /**
+     * @return the number of locate() calls since the last reset whose walk
+     * failed and fell back to checking all triangles
+     */
+    public long getFallbackCount () {
+        return fallbackCount;
+    }
+
+    /**
+     * Reset the locate() statistics.
+     */
+    public void resetLocateStatistics () {
+        locateCount = 0;
+        walkSteps = 0;
+        fallbackCount = 0;
+    }
+
+    /**
+     * @return true iff this DT is unbounded (has ghost triangles)
+     */
+    public boolean isUnbounded () {
+        return initialTriangle == null;
+    }
+
+    /**
+     * @return the initial triangle (its vertices are the corners of the DT);
+     * null if unbounded
+     */
+    public Triangle getInitialTriangle () {
+        return initialTriangle;
+    }
+
+    /**
+     * @param triangle a triangle
+     * @return true iff triangle is a ghost triangle (has the INFINITE vertex)
+     */
+    public static boolean isGhost (Triangle triangle) {
+        return ghostSlot(triangle) >= 0;
+    }
+
+    /**
+     * @return the slot of the INFINITE vertex in triangle; -1 if none
+     */
+    private static int ghostSlot (Triangle triangle) {
+        for (int i = 0; i < 3; i++)
+            if (triangle.get(i) == INFINITE) return i;
+        return -1;
+    }
+
     /**
      * True iff triangle is a member of this triangulation.
      * This method isn't required by AbstractSet, but it improves efficiency.
      * @param triangle the object to check for membership
      */
     public boolean contains (Object triangle) {
-        return triGraph.nodeSet().contains(triangle);
+        if (!(triangle instanceof Triangle)) return false;
+        int index = ((Triangle) triangle).index;
+        return index >= 0 && index < triangles.size() &&
+               triangles.get(index) == triangle;
+    }
+
+    /**
+     * Add a triangle to the triangle list; it becomes the incident triangle
+     * of its vertices.
+     * @param triangle the new triangle
+     */
+    private void addTriangle (Triangle triangle) {
+        triangle.index = triangles.size();
+        triangles.add(triangle);
+        modCount++;
+        if (log != null) {
+            Change change = new Change();
+            change.triangle = triangle;
+            log.add(change);
+        }
+        if (isGhost(triangle)) ghostCount++;
+        starIndex.invalidate(triangle);
+        for (int i = 0; i < 3; i++) {
+            incident.put(triangle.get(i), triangle);
+            if (!cells.isEmpty()) cells.remove(triangle.get(i));
+        }
+    }
+
+    /**
+     * Remove a triangle from the triangle list (the last triangle takes its
+     * place). A vertex whose incident triangle is removed gets a neighbor of
+     * the triangle around that vertex instead, or no entry if there is none.
+     * @param triangle a triangle of this triangulation
+     */
+    private void removeTriangle (Triangle triangle) {
+        int index = triangle.index;
+        Triangle last = triangles.remove(triangles.size() - 1);
+        if (last != triangle) {
+            triangles.set(index, last);
+            last.index = index;
+        }
+        triangle.index = -1;
+        modCount++;
+        if (log != null) {
+            Change change = new Change();
+            change.triangle = triangle;
+            change.neighbors = triangle.neighbors.clone();
+            log.add(change);
+        }
+        if (isGhost(triangle)) ghostCount--;
+        starIndex.invalidate(triangle);
+        for (int i = 0; i < 3; i++) {
+            Pnt vertex = triangle.get(i);
+            if (!cells.isEmpty()) cells.remove(vertex);
+            if (incident.get(vertex) != triangle) continue;
+            Triangle other = triangle.neighbors[(i + 1) % 3];
+            if (other == null || !contains(other))
+                other = triangle.neighbors[(i + 2) % 3];
+            if (other == null || !contains(other)) incident.remove(vertex);
+            else incident.put(vertex, other);
+        }
+    }
+
+    /**
+     * Link two triangles across their shared edge.
+     * @param triangle a triangle
+     * @param other a triangle sharing an edge with triangle (or null)
+     */
+    private static void link (Triangle triangle, Triangle other) {
+        if (other == null) return;
+        triangle.neighbors[triangle.slotFacing(other)] = other;
+        other.neighbors[other.slotFacing(triangle)] = triangle;
     }
 
     /**
@@ -128,13 +618,11 @@ public class DelaunayTriangulation extends AbstractSet<Triangle> {
      * @throws IllegalArgumentException if site is not in this triangle
      */
     public Triangle neighborOpposite (Pnt site, Triangle triangle) {
-        if (!triangle.contains(site))
+        int index = triangle.indexOf(site);
+        if (index < 0)
             return null;
             //throw new IllegalArgumentException("Bad vertex; not in triangle");
-        for (Triangle neighbor: triGraph.neighbors(triangle)) {
-            if (!neighbor.contains(site)) return neighbor;
-        }
-        return null;
+        return triangle.neighbors[index];
     }
 
     /**
@@ -143,7 +631,10 @@ public class DelaunayTriangulation extends AbstractSet<Triangle> {
      * @return the neighbors of triangle
      */
     public Set<Triangle> neighbors(Triangle triangle) {
-        return triGraph.neighbors(triangle);
+        Set<Triangle> neighbors = new ArraySet<Triangle>();
+        for (Triangle neighbor: triangle.neighbors)
+            if (neighbor != null) neighbors.add(neighbor);
+        return neighbors;
     }
 
     /**
@@ -199,63 +690,241 @@ public class DelaunayTriangulation extends AbstractSet<Triangle> {
      * @return the triangle that holds point; null if no such triangle
      */
     public Triangle locate (Pnt point) {
+        locateCount++;
         Triangle triangle = mostRecent;
         if (!this.contains(triangle)) triangle = null;
+        if (jumpAndWalk) triangle = jump(point, triangle);
 
         // Try a directed walk (this works fine in 2D, but can fail in 3D)
-        Set<Triangle> visited = new HashSet<Triangle>();
+        int steps = 0;
         while (triangle != null) {
-            if (visited.contains(triangle)) { // This should never happen
+            if (steps++ > triangles.size()) { // This should never happen
                 //System.out.println("Warning: Caught in a locate loop");
                 break;
             }
-            visited.add(triangle);
             // Corner opposite point
-            Pnt corner = point.isOutside(triangle.toArray(nullPnt));
-            if (corner == null) return triangle;
+            Pnt corner = outsideCorner(point, triangle);
+            if (corner == null) {
+                walkSteps += steps;
+                return triangle;
+            }
             triangle = this.neighborOpposite(corner, triangle);
         }
+        walkSteps += steps;
+        fallbackCount++;
         // No luck; try brute force
         //System.out.println("Warning: Checking all triangles for " + point);
         for (Triangle tri: this) {
-            if (point.isOutside(tri.toArray(nullPnt)) == null) return tri;
+            if (outsideCorner(point, tri) == null) return tri;
         }
         // No such triangle
         //System.out.println("Warning: No triangle holds " + point);
         return null;
     }
 
+    /**
+     * Jump step of jump-and-walk: pick the triangle closest to point among
+     * about n^(1/3) random triangles and start (measured at their first
+     * vertex).
+     * @param point the point to locate
+     * @param start the default starting triangle (may be null)
+     * @return the starting triangle for the walk
+     */
+    private Triangle jump (Pnt point, Triangle start) {
+        int n = triangles.size();
+        int samples = (int) Math.cbrt(n);
+        Triangle best = start;
+        double bestDistance = (start == null)? Double.POSITIVE_INFINITY :
+                distanceSquared(point, start.get(0));
+        for (int i = 0; i < samples; i++) {
+            Triangle triangle = triangles.get(random.nextInt(n));
+            double distance = distanceSquared(point, triangle.get(0));
+            if (distance < bestDistance) {
+                best = triangle;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Find a corner of triangle whose opposite facet has point strictly on
+     * its far side. A ghost triangle holds the points strictly outside its
+     * hull edge; for any other point the corner is INFINITE, so the walk goes
+     * back across the hull edge.
+     * @return the corner; null if point is in triangle
+     */
+    private static Pnt outsideCorner (Pnt point, Triangle triangle) {
+        int slot = ghostSlot(triangle);
+        if (slot < 0)
+            return point.isOutside(triangle.get(0), triangle.get(1),
+                    triangle.get(2));
+        Pnt a = triangle.get((slot + 1) % 3), b = triangle.get((slot + 2) % 3);
+        return (Pnt.orient2D(a, b, point) > 0)? null : INFINITE;
+    }
+
+    /**
+     * Check if site is inside the circumcircle of triangle (with ties broken
+     * by perturbation, see Pnt.vsPerturbedCircumcircle). The cached circle of
+     * the triangle settles most tests without the exact predicate. The "circumcircle"
+     * of a ghost triangle is the open half-plane beyond its hull edge plus
+     * the open hull edge itself.
+     * @return true iff site conflicts with triangle
+     */
+    static boolean inConflict (Pnt site, Triangle triangle) {
+        int slot = ghostSlot(triangle);
+        if (slot < 0) {
+            int quick = triangle.vsCachedCircumcircle(site);
+            if (quick != 0) return quick < 0;
+            return site.vsPerturbedCircumcircle(triangle.get(0),
+                    triangle.get(1), triangle.get(2)) == -1;
+        }
+        Pnt a = triangle.get((slot + 1) % 3), b = triangle.get((slot + 2) % 3);
+        double orient = Pnt.orient2D(a, b, site);
+        if (orient != 0) return orient > 0;
+        // On the hull line: only the points between a and b
+        double ax = site.coord(0) - a.coord(0), ay = site.coord(1) - a.coord(1);
+        double bx = site.coord(0) - b.coord(0), by = site.coord(1) - b.coord(1);
+        return ax * bx + ay * by < 0;
+    }
+
+    private static double distanceSquared (Pnt p, Pnt q) {
+        double dx = p.coord(0) - q.coord(0), dy = p.coord(1) - q.coord(1);
+        return dx * dx + dy * dy;
+    }
+
+    private static double distanceSquared (Pnt p, double x, double y) {
+        double dx = p.coord(0) - x, dy = p.coord(1) - y;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Report the Voronoi cell of a site: the circumcenters of the triangles
+     * surrounding it, in order. Cells are cached until a triangle around the
+     * site is added or removed, so repeated queries are cheap. The cell of a
+     * hull site of an unbounded DT is unbounded; only its finite vertices
+     * (from the triangles that are not ghosts) are reported.
+     * @param site a vertex of this triangulation
+     * @return the cell vertices (shared with the cache; do not modify);
+     * null if site is not a vertex
+     */
+    public Pnt[] voronoiCell (Pnt site) {
+        Pnt[] cell = cells.get(site);
+        if (cell != null) return cell;
+        Triangle triangle = incident.get(site);
+        if (triangle == null || site == INFINITE) return null;
+        int size = 0;
+        cursor.reset(site, triangle);
+        while (cursor.next()) if (!cursor.isGhost()) size++;
+        cell = new Pnt[size];
+        int i = 0;
+        cursor.reset(site, triangle);
+        while (cursor.next())
+            if (!cursor.isGhost()) cell[i++] = cursor.triangle().getCircumcenter();
+        cells.put(site, cell);
+        return cell;
+    }
+
+    /**
+     * Start logging changes, so they can be undone by rollback. Sites may be
+     * placed, removed and moved during a transaction; moves are done as a
+     * removal and a placement.
+     * @throws IllegalStateException if a transaction is already open
+     */
+    public void beginTransaction () {
+        if (log != null) throw new IllegalStateException("Open transaction");
+        log = new ArrayList<Change>();
+    }
+
+    /**
+     * @return true iff a transaction is open
+     */
+    public boolean inTransaction () {
+        return log != null;
+    }
+
+    /**
+     * Keep the changes of the open transaction and stop logging.
+     * @throws IllegalStateException if no transaction is open
+     */
+    public void commit () {
+        if (log == null) throw new IllegalStateException("No transaction");
+        log = null;
+    }
+
+    /**
+     * Undo the changes of the open transaction (newest first) and stop
+     * logging. The DT gets back the very triangles it had when the
+     * transaction began.
+     * @throws IllegalStateException if no transaction is open
+     */
+    public void rollback () {
+        if (log == null) throw new IllegalStateException("No transaction");
+        List<Change> changes = log;
+        log = null;
+        for (int i = changes.size() - 1; i >= 0; i--) {
+            Change change = changes.get(i);
+            if (change.triangle == null) restore(change);
+            else if (change.neighbors == null) removeTriangle(change.triangle);
+            else {
+                // Put the triangle back and make its neighbors point to it
+                Triangle triangle = change.triangle;
+                addTriangle(triangle);
+                for (int j = 0; j < 3; j++) {
+                    Triangle neighbor = change.neighbors[j];
+                    triangle.neighbors[j] = neighbor;
+                    if (neighbor == null || !contains(neighbor)) continue;
+                    for (int k = 0; k < 3; k++)
+                        if (!triangle.contains(neighbor.get(k)))
+                            neighbor.neighbors[k] = triangle;
+                }
+            }
+        }
+        mostRecent = triangles.isEmpty()? null : triangles.get(0);
+    }
+
+    /**
+     * Log the state that a rebuild or a change to the collinear sites is
+     * about to replace (if a transaction is open).
+     */
+    private void saveState () {
+        if (log == null) return;
+        Change change = new Change();
+        change.triangles = triangles;
+        change.incident = incident;
+        change.collinear = new LinkedHashSet<Pnt>(collinear);
+        change.ghostCount = ghostCount;
+        log.add(change);
+    }
+
+    /**
+     * Go back to a state saved by saveState.
+     */
+    private void restore (Change change) {
+        triangles = change.triangles;
+        triangleView = Collections.unmodifiableList(triangles);
+        incident = change.incident;
+        collinear = change.collinear;
+        ghostCount = change.ghostCount;
+        cells.clear();
+        starIndex.clear();
+        modCount++;
+    }
+
+    /**
+     * @return a counter that changes whenever the triangulation changes
+     */
+    public long getModificationCount () {
+        return modCount;
+    }
+
     /**
      * Locate the triangle with point as vertex
      * @param point the vertex to locate
      * @return the triangle that contains vertex; null if no such triangle
      */
     public Triangle locate_by_vertex (Pnt point) {
-        Triangle triangle = mostRecent;
-        if (!this.contains(triangle)) triangle = null;
-
-        // Try a directed walk (this works fine in 2D, but can fail in 3D)
-        Set<Triangle> visited = new HashSet<Triangle>();
-        while (triangle != null) {
-            if (triangle.contains(point)) return triangle;
-            if (visited.contains(triangle)) { // This should never happen
-                //System.out.println("Warning: Caught in a locate loop");
-                break;
-            }
-            visited.add(triangle);
-            // Corner opposite point
-            Pnt corner = point.isOutside(triangle.toArray(nullPnt));
-            if (corner == null) break;
-            triangle = this.neighborOpposite(corner, triangle);
-        }
-        // No luck; try brute force
-        //System.out.println("Warning: Checking all triangles for " + point);
-        for (Triangle tri: this) {
-            if (tri.contains(point)) return tri;
-        }
-        // No such triangle
-        //System.out.println("Warning: No triangle contains " + point);
-        return null;
+        return incident.get(point);
     }
 
     /**
@@ -266,62 +935,145 @@ public class DelaunayTriangulation extends AbstractSet<Triangle> {
      * @throws IllegalArgumentException if site does not lie in any triangle
      */
     public boolean delaunayPlace (Pnt site) {
+        if (triangles.isEmpty()) return placeCollinear(site);
         // Locate containing triangle and try to place the site
         return delaunayPlace(site, locate(site));
     }
 
+    /**
+     * Place a site into an unbounded DT that has no triangles yet. The sites
+     * wait until one is not collinear with the others; then the first
+     * triangle and its ghosts are made and the waiting sites are placed.
+     * @param site the new Pnt
+     * @return true, if site was placed
+     */
+    private boolean placeCollinear (Pnt site) {
+        if (collinear.contains(site)) return false;
+        saveState();
+        collinear.add(site);
+        if (collinear.size() < 3) return true;
+        Iterator<Pnt> it = collinear.iterator();
+        Pnt a = it.next(), b = it.next();
+        double orient = Pnt.orient2D(a, b, site);
+        if (orient == 0) return true;
+        if (orient < 0) {
+            Pnt t = a; a = b; b = t;
+        }
+        // Counterclockwise triangle and the ghost beyond each of its edges
+        Triangle triangle = new Triangle(a, b, site);
+        Triangle[] ghosts = {new Triangle(b, a, INFINITE),
+                new Triangle(site, b, INFINITE), new Triangle(a, site, INFINITE)};
+        addTriangle(triangle);
+        for (Triangle ghost: ghosts) {
+            addTriangle(ghost);
+            link(ghost, triangle);
+        }
+        link(ghosts[0], ghosts[1]);
+        link(ghosts[1], ghosts[2]);
+        link(ghosts[2], ghosts[0]);
+        mostRecent = triangle;
+        List<Pnt> waiting = new ArrayList<Pnt>(collinear);
+        collinear.clear();
+        for (Pnt pnt: waiting)
+            if (pnt != a && pnt != b && pnt != site) delaunayPlace(pnt);
+        return true;
+    }
+
+    /**
+     * Place many sites into the DT, in a biased randomized order along a
+     * Hilbert curve (see SpatialSort) so that locate walks stay short.
+     * Sites matching an existing DT vertex are ignored.
+     * @param sites the new Pnts
+     * @return the number of sites placed
+     * @throws IllegalArgumentException if a site does not lie in any triangle
+     */
+    public int delaunayPlaceAll (Collection<? extends Pnt> sites) {
+        int placed = 0;
+        for (Pnt site: SpatialSort.brio(sites, new Random()))
+            if (delaunayPlace(site)) placed++;
+        return placed;
+    }
+
     /**
      * Check if one site affects a Voronoi cell of another site. 
      * In other words, check if it's modify the triangulation of "main site" 
+     * The circumdisks around the main site are indexed (see StarIndex) and
+     * the index is kept until a triangle around the main site changes, so
+     * repeated calls for the same main site take O(log d) time for a star
+     * of d triangles and allocate nothing.
      * @param mainSite an existing site
      * @param site the new Pnt
-     * @return the triangle that holds point; null if no such triangle
-     * @throws IllegalArgumentException if site does not lie in any triangle
+     * @return the triangle that holds point; null if no such triangle (or
+     * if mainSite is not a DT vertex)
      */
     public Triangle locateTriangleOf (Pnt mainSite, Pnt site) {
-        Triangle mainTriangle = locate_by_vertex(mainSite);
-        List<TriangleControl> mainControl = 
-                surroundingTrianglesControl(mainSite, mainTriangle);
-        for (TriangleControl tc: mainControl) 
-            if (site.vsCircumcircle(tc.triangle.toArray(nullPnt)) == -1)
-                return tc.triangle;
-        return null;
+        if (!starIndex.isFor(mainSite)) {
+            if (!cursor.reset(mainSite)) return null;
+            starIndex.build(mainSite, cursor);
+        }
+        return starIndex.find(site);
     }
 
     /**
-     * Remove all sites that not affect the triangulation of "main site" 
+     * Remove all sites that not affect the triangulation of "main site".
+     * When most sites go away, the DT is rebuilt from the sites that stay
+     * (the main site, its Delaunay neighbors and the initial vertices) instead
+     * of removing the others one at a time, so the cost depends on what is
+     * kept, not on what is removed.
      * @param mainSite an existing site
-     * @return number of removed sites
+     * @return the removed sites
      */
     public ArrayList<Pnt> delaunayRemoveFarFrom (Pnt mainSite) {
         Triangle mainTriangle = locate_by_vertex(mainSite);
-        List<TriangleControl> mainControl = 
-                surroundingTrianglesControl(mainSite, mainTriangle);
-        // transform List to HashSet to simplify and accelerate 
-        HashSet<Triangle> relevantTriangles = new HashSet<Triangle>();
+        if (mainTriangle == null) return new ArrayList<Pnt>();
         HashSet<Pnt> relevantPoints = new HashSet<Pnt>();
-        relevantTriangles.add(initialTriangle);
-        relevantPoints.addAll(initialTriangle);
-        for (TriangleControl tc: mainControl) {
-            relevantTriangles.add(tc.triangle);
-            relevantPoints.add(tc.point);
-        }
+        relevantPoints.add(mainSite);
+        if (isUnbounded()) relevantPoints.add(INFINITE);
+        else relevantPoints.addAll(initialTriangle);
+        cursor.reset(mainSite, mainTriangle);
+        while (cursor.next())
+            relevantPoints.add(cursor.vertex());
         ArrayList<Pnt> removed = new ArrayList<>();
-        for (Triangle triangle: this) {
-            if (relevantTriangles.contains(triangle)) 
-                    continue;
-            for (Pnt site: triangle) {
-                if (!relevantPoints.contains(site)) {
-                    removed.add(site);
-                }
-            }
+        for (Pnt site: incident.keySet())
+            if (!relevantPoints.contains(site)) removed.add(site);
+        if (removed.size() > relevantPoints.size()) {
+            if (isUnbounded()) relevantPoints.remove(INFINITE);
+            else relevantPoints.removeAll(initialTriangle);
+            rebuild(relevantPoints);
+            mostRecent = locate_by_vertex(mainSite);
         }
-        for (Pnt site: removed) {
-            delaunayRemove(site);
+        else {
+            for (Pnt site: removed)
+                delaunayRemove(site);
         }
         return removed;
     }
 
+    /**
+     * Discard all triangles and triangulate the given sites again, starting
+     * from the initial triangle (or from nothing, if unbounded). Triangles
+     * of the old DT are no longer members of this one.
+     * @param sites the sites to keep (without the initial vertices)
+     */
+    private void rebuild (Collection<Pnt> sites) {
+        saveState();
+        triangles = new ArrayList<Triangle>();
+        triangleView = Collections.unmodifiableList(triangles);
+        incident = new HashMap<Pnt, Triangle>();
+        cells.clear();
+        starIndex.clear();
+        ghostCount = 0;
+        collinear.clear();
+        mostRecent = null;
+        if (!isUnbounded()) {
+            Triangle triangle = new Triangle(initialTriangle.get(0),
+                    initialTriangle.get(1), initialTriangle.get(2));
+            addTriangle(triangle);
+            mostRecent = triangle;
+        }
+        delaunayPlaceAll(sites);
+    }
+
     /**
      * Place a new site into the DT.
      * Nothing happens if the site matches an existing DT vertex.
@@ -336,11 +1088,11 @@ public class DelaunayTriangulation extends AbstractSet<Triangle> {
         // Give up if no containing triangle or if site is already in DT
         if (triangle == null)
             throw new IllegalArgumentException("No containing triangle");
-        if (triangle.contains(site)) return false;
+        if (incident.containsKey(site)) return false;
 
         // Determine the cavity and update the triangulation
-        Set<Triangle> cavity = getCavity(site, triangle);
-        mostRecent = update(site, cavity);
+        getCavity(site, triangle);
+        mostRecent = update(site);
         return true;
     }
 
@@ -354,10 +1106,23 @@ public class DelaunayTriangulation extends AbstractSet<Triangle> {
         // Uses straightforward scheme rather than best asymptotic time
 
         // Locate containing triangle
+        if (site.equals(INFINITE)) return false;
         Triangle triangle = locate_by_vertex(site);
         // Give up if no containing triangle 
-        if (triangle == null)
-            return false;
+        if (triangle == null) {
+            if (!collinear.contains(site)) return false;
+            saveState();
+            return collinear.remove(site);
+        }
+        if (isUnbounded() && triangles.size() - ghostCount ==
+                realTrianglesAround(site, triangle)) {
+            // Every real triangle goes away: what is left may be collinear
+            List<Pnt> sites = new ArrayList<Pnt>(incident.keySet());
+            sites.remove(site);
+            sites.remove(INFINITE);
+            rebuild(sites);
+            return true;
+        }
 
         // Determine the cavity and update the triangulation
         List<TriangleControl> cavity = 
@@ -366,156 +1131,512 @@ public class DelaunayTriangulation extends AbstractSet<Triangle> {
         return true;
     }
 
+    /**
+     * Move a site of the DT to a new position.
+     * If the site stays inside its star (all triangles around it keep their
+     * orientation), it is relocated in place and the Delaunay property is
+     * restored by flipping edges around it; this is the usual case for small
+     * movements. Otherwise the site is removed and placed again.
+     * Nothing happens if oldSite is not in the DT or newSite matches another
+     * DT vertex.
+     * @param oldSite the current position of the site
+     * @param newSite the new position of the site
+     * @return true, if the site was moved
+     * @throws IllegalArgumentException if newSite does not lie in any triangle
+     */
+    public boolean delaunayMove (Pnt oldSite, Pnt newSite) {
+        Triangle triangle = locate_by_vertex(oldSite);
+        if (!newSite.equals(oldSite) && (incident.containsKey(newSite) ||
+                collinear.contains(newSite)))
+            return false;
+        if (triangle == null) {
+            // Unbounded DT without triangles yet
+            if (!collinear.contains(oldSite)) return false;
+            saveState();
+            collinear.remove(oldSite);
+            return delaunayPlace(newSite);
+        }
+        List<Triangle> star = surroundingTriangles(oldSite, triangle);
+        // Relocation in place is not logged
+        if (log != null || !staysInStar(oldSite, newSite, star)) {
+            delaunayRemove(oldSite);
+            return delaunayPlace(newSite);
+        }
+        // Relocate the vertex; the cells of the star vertices change
+        for (Triangle tri: star) {
+            starIndex.invalidate(tri);
+            tri.replace(tri.indexOf(oldSite), newSite);
+            for (int i = 0; i < 3; i++) cells.remove(tri.get(i));
+        }
+        cells.remove(oldSite);
+        incident.remove(oldSite);
+        incident.put(newSite, triangle);
+        modCount++;
+        mostRecent = legalize(star, false);
+        return true;
+    }
+
+    /**
+     * Check if the triangles around site stay valid when site moves.
+     * @param site the site
+     * @param position the new position of site
+     * @param star the triangles surrounding site, in order
+     * @return true iff star closes around site and every triangle of star
+     * keeps its orientation when site moves to position
+     */
+    private static boolean staysInStar (Pnt site, Pnt position,
+                                        List<Triangle> star) {
+        for (Triangle tri: star) {
+            if (isGhost(tri)) return false;     // Site is on the hull
+            int slot = tri.indexOf(site);
+            Pnt b = tri.get((slot + 1) % 3), c = tri.get((slot + 2) % 3);
+            if (tri.neighbors[(slot + 1) % 3] == null ||
+                    tri.neighbors[(slot + 2) % 3] == null)
+                return false;                   // Site is on the hull
+            double before = Pnt.orient2D(site, b, c);
+            double after = Pnt.orient2D(position, b, c);
+            if (after == 0 || (before > 0) != (after > 0)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of triangles around site that are not ghosts
+     */
+    private int realTrianglesAround (Pnt site, Triangle triangle) {
+        int count = 0;
+        cursor.reset(site, triangle);
+        while (cursor.next())
+            if (!cursor.isGhost()) count++;
+        return count;
+    }
+
     /**
      * Determine the cavity caused by new site.
+     * The cavity triangles are left in the cavity buffer. Triangles are
+     * stamped instead of being kept in sets: epoch marks the ones checked so
+     * far and epoch + 1 the ones in the cavity, so no memory is allocated
+     * once the buffers are large enough.
      * @param site the site causing the cavity
      * @param triangle the triangle containing site
-     * @return set of all triangles that have site in their circumcircle
-     */
-    private Set<Triangle> getCavity (Pnt site, Triangle triangle) {
-        Set<Triangle> encroached = new HashSet<Triangle>();
-        Queue<Triangle> toBeChecked = new LinkedList<Triangle>();
-        Set<Triangle> marked = new HashSet<Triangle>();
-        toBeChecked.add(triangle);
-        marked.add(triangle);
-        while (!toBeChecked.isEmpty()) {
-            triangle = toBeChecked.remove();
-            if (site.vsCircumcircle(triangle.toArray(nullPnt)) == 1)
+     */
+    private void getCavity (Pnt site, Triangle triangle) {
+        if (epoch > Integer.MAX_VALUE - 2) {      // Restart the stamps
+            for (Triangle tri: triangles) tri.mark = 0;
+            epoch = 0;
+        }
+        epoch += 2;
+        cavitySize = 0;
+        int top = 0;
+        pending[top++] = triangle;
+        triangle.mark = epoch;
+        while (top > 0) {
+            triangle = pending[--top];
+            if (!inConflict(site, triangle))
                 continue; // Site outside triangle => triangle not in cavity
-            encroached.add(triangle);
+            triangle.mark = epoch + 1;
+            if (cavitySize == cavity.length) cavity = grow(cavity);
+            cavity[cavitySize++] = triangle;
             // Check the neighbors
-            for (Triangle neighbor: triGraph.neighbors(triangle)){
-                if (marked.contains(neighbor)) continue;
-                marked.add(neighbor);
-                toBeChecked.add(neighbor);
+            for (int i = 0; i < 3; i++) {
+                Triangle neighbor = triangle.neighbors[i];
+                if (neighbor == null || neighbor.mark >= epoch) continue;
+                neighbor.mark = epoch;
+                if (top == pending.length) pending = grow(pending);
+                pending[top++] = neighbor;
             }
         }
-        return encroached;
+    }
+
+    private static Triangle[] grow (Triangle[] array) {
+        return Arrays.copyOf(array, 2 * array.length);
     }
 
     /**
-     * Update the triangulation by removing the cavity triangles and then
-     * filling the cavity with new triangles.
+     * Update the triangulation by removing the cavity triangles (found by
+     * getCavity) and then filling the cavity with new triangles.
      * @param site the site that created the cavity
-     * @param cavity the triangles with site in their circumcircle
      * @return one of the new triangles
      */
-    private Triangle update (Pnt site, Set<Triangle> cavity) {
-        Set<Set<Pnt>> boundary = new HashSet<Set<Pnt>>();
-        Set<Triangle> theTriangles = new HashSet<Triangle>();
-
-        // Find boundary facets and adjacent triangles
-        for (Triangle triangle: cavity) {
-            theTriangles.addAll(neighbors(triangle));
-            for (Pnt vertex: triangle) {
-                Set<Pnt> facet = triangle.facetOpposite(vertex);
-                if (boundary.contains(facet)) boundary.remove(facet);
-                else boundary.add(facet);
+    private Triangle update (Pnt site) {
+        int count = 0;
+
+        // Build a new triangle on each boundary facet and link it to the
+        // triangle outside the cavity
+        for (int c = 0; c < cavitySize; c++) {
+            Triangle triangle = cavity[c];
+            for (int i = 0; i < 3; i++) {
+                Triangle outside = triangle.neighbors[i];
+                if (outside != null && outside.mark == epoch + 1) continue;
+                Triangle tri = new Triangle(triangle.get((i + 1) % 3),
+                        triangle.get((i + 2) % 3), site);
+                addTriangle(tri);
+                link(tri, outside);
+                if (count == created.length) created = grow(created);
+                created[count++] = tri;
             }
         }
-        theTriangles.removeAll(cavity);        // Adj triangles only
 
         // Remove the cavity triangles from the triangulation
-        for (Triangle triangle: cavity) triGraph.remove(triangle);
-
-        // Build each new triangle and add it to the triangulation
-        Set<Triangle> newTriangles = new HashSet<Triangle>();
-        for (Set<Pnt> vertices: boundary) {
-            vertices.add(site);
-            Triangle tri = new Triangle(vertices);
-            triGraph.add(tri);
-            newTriangles.add(tri);
+        for (int c = 0; c < cavitySize; c++) {
+            removeTriangle(cavity[c]);
+            cavity[c] = null;
         }
 
-        // Update the graph links for each new triangle
-        theTriangles.addAll(newTriangles);    // Adj triangle + new triangles
-        for (Triangle triangle: newTriangles)
-            for (Triangle other: theTriangles)
-                if (triangle.isNeighbor(other))
-                    triGraph.add(triangle, other);
+        // Link the new triangles to each other: each edge (vertex, site) is
+        // shared by exactly two of them. The open edges are matched through
+        // a small hash table keyed by vertex identity.
+        int capacity = openKeys.length;
+        while (capacity < 2 * count) capacity *= 2;
+        if (capacity > openKeys.length) {
+            openKeys = new Pnt[capacity];
+            openValues = new Triangle[capacity];
+        }
+        int mask = capacity - 1;
+        for (int c = 0; c < count; c++) {
+            Triangle triangle = created[c];
+            for (int i = 0; i < 2; i++) {
+                Pnt vertex = triangle.get(i);
+                int slot = System.identityHashCode(vertex) & mask;
+                while (openKeys[slot] != null && openKeys[slot] != vertex)
+                    slot = (slot + 1) & mask;
+                if (openKeys[slot] == null) {
+                    openKeys[slot] = vertex;
+                    openValues[slot] = triangle;
+                } else {
+                    link(triangle, openValues[slot]);
+                    openValues[slot] = null;    // Matched; keep the key so
+                }                               // probe chains stay intact
+            }
+        }
+        for (int c = 0; c < count; c++) {
+            for (int i = 0; i < 2; i++) {
+                Pnt vertex = created[c].get(i);
+                int slot = System.identityHashCode(vertex) & mask;
+                while (openKeys[slot] != null) {
+                    openKeys[slot] = null;
+                    openValues[slot] = null;
+                    slot = (slot + 1) & mask;
+                }
+            }
+        }
 
         // Return one of the new triangles
-        return newTriangles.iterator().next();
+        Triangle result = created[0];
+        for (int c = 0; c < count; c++) created[c] = null;
+        return result;
     }
 
     /**
      * Update the triangulation by removing the site and 
      * filling the cavity (surrounding) with new triangles.
+     *
+     * The hole is filled by ear clipping in the order of Devillers ("On
+     * deletion in Delaunay triangulations", 1999): every ear of the link
+     * polygon that can be clipped is kept in a priority queue keyed by the
+     * power of site with respect to the ear's circumcircle, and the ear with
+     * the smallest power is a Delaunay triangle. Clipping an ear only changes
+     * the keys of its two neighbors, so the hole of k vertices is filled in
+     * O(k log k). Power ties (cocircular sites) are then settled by flipping
+     * the few new edges that fail the perturbed in-circle test.
      * @param site the site that created the cavity (will be removed)
      * @param cavity the surrounding triangles with site in their vertices
      * @return one of the new triangles
-     * @throws Exception 
-     */
-    private Triangle remove (Pnt site, List<TriangleControl> cavity)
-    {
-        int v0, v1, v2, cavitySize;
-        Pnt intruder;
-        double d2;
-        Triangle ear, earSite;
-        v0 = -1;
-        cavitySize = cavity.size();
-        while (cavitySize > 3) {
-            v0++;
-            // Is cycle completed? 
-            if (v0 == cavitySize) {
-                System.err.println("Invalid cavity?");
-                System.exit(1);
+     * @throws IllegalStateException if the cavity cannot be filled
+     */
+    private Triangle remove (Pnt site, List<TriangleControl> cavity) {
+        int k = cavity.size();
+        for (int i = 0; i < k; i++)
+            if (cavity.get(i).point == INFINITE)
+                return removeHullVertex(site, cavity, i);
+
+        // Retire the triangles around site and build the link polygon; each
+        // node holds the triangle across the edge to the next node, if any
+        LinkNode[] nodes = new LinkNode[k];
+        for (int i = 0; i < k; i++) {
+            TriangleControl ce = cavity.get(i);
+            nodes[i] = new LinkNode(ce.point,
+                    neighborOpposite(site, ce.triangle));
+            removeTriangle(ce.triangle);
+        }
+        for (int i = 0; i < k; i++) {
+            nodes[i].next = nodes[(i + 1) % k];
+            nodes[(i + 1) % k].prev = nodes[i];
+        }
+        // Orientation of the polygon as seen from site
+        double sense = Math.signum(Pnt.orient2D(nodes[0].point,
+                nodes[1].point, site));
+
+        PriorityQueue<Ear> queue = new PriorityQueue<Ear>(k);
+        for (LinkNode node: nodes) queueEar(queue, node, site, sense);
+        List<Triangle> created = new ArrayList<Triangle>(k - 2);
+        while (k > 3) {
+            Ear best = queue.poll();
+            if (best == null) throw new IllegalStateException("Invalid cavity");
+            LinkNode node = best.node;
+            if (node.removed || best.version != node.version) continue;
+            // Clip the ear (prev, node, next)
+            LinkNode prev = node.prev, next = node.next;
+            Triangle ear = new Triangle(prev.point, node.point, next.point);
+            addTriangle(ear);
+            link(ear, prev.across);
+            link(ear, node.across);
+            created.add(ear);
+            prev.across = ear;
+            prev.next = next;
+            next.prev = prev;
+            node.removed = true;
+            k--;
+            queueEar(queue, prev, site, sense);
+            queueEar(queue, next, site, sense);
+        }
+        LinkNode node = nodes[0];
+        while (node.removed) node = node.next;
+        Triangle last = new Triangle(node.prev.point, node.point,
+                node.next.point);
+        addTriangle(last);
+        link(last, node.prev.across);
+        link(last, node.across);
+        link(last, node.next.across);
+        created.add(last);
+        return legalize(created, true);
+    }
+
+    /**
+     * Remove a convex hull vertex of an unbounded DT. Its link is a chain of
+     * sites closed by INFINITE. Ears of the chain that turn toward site and
+     * hold no other chain site are clipped until the rest of the chain is
+     * convex; it becomes part of the hull and gets ghost triangles. Flips
+     * then make the new triangles Delaunay.
+     * @param site the site to remove
+     * @param cavity the surrounding triangles with site in their vertices
+     * @param start the position of INFINITE in the link
+     * @return one of the new triangles
+     */
+    private Triangle removeHullVertex (Pnt site, List<TriangleControl> cavity,
+                                       int start) {
+        int k = cavity.size();
+        Triangle firstGhost = neighborOpposite(site, cavity.get(start).triangle);
+        Triangle lastGhost =
+                neighborOpposite(site, cavity.get((start + k - 1) % k).triangle);
+        LinkNode first = null, last = null;
+        for (int j = 1; j < k; j++) {
+            TriangleControl ce = cavity.get((start + j) % k);
+            LinkNode node = new LinkNode(ce.point, (j < k - 1)?
+                    neighborOpposite(site, ce.triangle) : null);
+            if (first == null) first = node;
+            else {
+                last.next = node;
+                node.prev = last;
             }
-            v1 = (v0 + 1) % cavitySize;
-            v2 = (v1 + 1) % cavitySize;
-            ear = new Triangle(cavity.get(v0).point, 
-                    cavity.get(v1).point, cavity.get(v2).point);
-            earSite = new Triangle(cavity.get(v0).point, 
-                    cavity.get(v2).point, site);
-            d2 = earSite.direction();
-            if (d2 == 0) {
-                earSite = new Triangle(cavity.get(v0).point, 
-                        cavity.get(v1).point, site);
-                d2 = earSite.direction();
+            last = node;
+        }
+        for (TriangleControl ce: cavity) removeTriangle(ce.triangle);
+        double sense = Math.signum(Pnt.orient2D(first.point, first.next.point,
+                site));
+
+        // Clip the ears of the chain
+        List<Triangle> created = new ArrayList<Triangle>();
+        boolean clipped = true;
+        while (clipped) {
+            clipped = false;
+            for (LinkNode node = first.next; node != last; node = node.next) {
+                if (!isChainEar(node, first, sense)) continue;
+                LinkNode prev = node.prev, next = node.next;
+                Triangle ear = new Triangle(prev.point, node.point, next.point);
+                addTriangle(ear);
+                link(ear, prev.across);
+                link(ear, node.across);
+                created.add(ear);
+                prev.across = ear;
+                prev.next = next;
+                next.prev = prev;
+                clipped = true;
             }
-            ///-------------------------------------------
-            if ((ear.direction() * d2) > 0) {
-                intruder = null;
-                Pnt[] aear = ear.toArray(nullPnt);
-                for (TriangleControl ce: cavity) 
-                    if ((!ear.contains(ce.point)) &&
-                        (ce.point.vsCircumcircle(aear) == -1)) {
-                        intruder = ce.point;
-                        break;
-                    }
-                if (intruder == null) {
-                    TriangleControl ce = cavity.get(v0);
-                    triGraph.add(ear);
-                    updateCavity(site, ear, ce);
-                    updateCavity(site, ear, cavity.get(v1));
-                    ce.newTriangle = true;
-                    ce.triangle = ear;
-                    cavity.remove(v1);
-                    v0 = -1;
+        }
+
+        // The rest of the chain is on the hull; the outside is the side away
+        // from the triangle across each edge
+        Triangle previous = firstGhost;
+        for (LinkNode node = first; node != last; node = node.next) {
+            Pnt a = node.point, b = node.next.point;
+            Triangle inside = node.across;
+            Pnt c = inside.get(3 - inside.indexOf(a) - inside.indexOf(b));
+            Triangle ghost = (Pnt.orient2D(a, b, c) < 0)?
+                    new Triangle(a, b, INFINITE) : new Triangle(b, a, INFINITE);
+            addTriangle(ghost);
+            link(ghost, node.across);
+            link(ghost, previous);
+            previous = ghost;
+        }
+        link(previous, lastGhost);
+        if (created.isEmpty()) return previous;
+        return legalize(created, true);
+    }
+
+    /**
+     * Check if the chain around a removed hull vertex has an ear at node:
+     * the chain turns toward the removed site and no other chain site lies in
+     * the triangle (prev, node, next).
+     */
+    private static boolean isChainEar (LinkNode node, LinkNode first,
+                                       double sense) {
+        Pnt a = node.prev.point, b = node.point, c = node.next.point;
+        if (Pnt.orient2D(a, b, c) * sense <= 0) return false;
+        for (LinkNode other = first; other != null; other = other.next) {
+            if (other == node || other == node.prev || other == node.next)
+                continue;
+            Pnt p = other.point;
+            if (Pnt.orient2D(a, b, p) * sense >= 0 &&
+                    Pnt.orient2D(b, c, p) * sense >= 0 &&
+                    Pnt.orient2D(c, a, p) * sense >= 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Queue the ear at node of the link polygon around site, if it can be
+     * clipped: it turns like the polygon and site lies on the far side of its
+     * diagonal. Any older queue entry for node becomes stale.
+     */
+    private static void queueEar (PriorityQueue<Ear> queue, LinkNode node,
+                                  Pnt site, double sense) {
+        node.version++;
+        Pnt a = node.prev.point, b = node.point, c = node.next.point;
+        double orient = Pnt.orient2D(a, b, c);
+        if (orient * sense <= 0) return;              // Reflex ear
+        if (Pnt.orient2D(a, c, site) * sense < 0) return;
+        // Power of site with respect to the circle through a, b and c
+        double power = -Pnt.inCircle2D(a, b, c, site) / orient;
+        queue.add(new Ear(power, node, node.version));
+    }
+
+    /**
+     * Flip the edges of the given triangles until all of them pass the
+     * perturbed in-circle test (Lawson's flip algorithm, started from these
+     * triangles). Edges between untouched triangles are assumed legal.
+     * @param created the new triangles
+     * @param newEdgesOnly true to check only edges shared by two of the new
+     * triangles (or triangles made by flips)
+     * @return one of the resulting triangles
+     */
+    private Triangle legalize (List<Triangle> created, boolean newEdgesOnly) {
+        Set<Triangle> fresh = new HashSet<Triangle>(created);
+        Deque<Triangle> toBeChecked = new ArrayDeque<Triangle>(created);
+        Triangle result = created.get(created.size() - 1);
+        while (!toBeChecked.isEmpty()) {
+            Triangle triangle = toBeChecked.pop();
+            if (!contains(triangle) || isGhost(triangle)) continue;
+            for (int i = 0; i < 3; i++) {
+                Triangle neighbor = triangle.neighbors[i];
+                if (neighbor == null || isGhost(neighbor)) continue;
+                if (newEdgesOnly && !fresh.contains(neighbor)) continue;
+                Pnt opposite = neighbor.get(neighbor.slotFacing(triangle));
+                if (opposite.vsPerturbedCircumcircle(triangle.get(0),
+                        triangle.get(1), triangle.get(2)) != -1) continue;
+                Triangle[] pair = flip(triangle, i);
+                for (Triangle tri: pair) {
+                    fresh.add(tri);
+                    toBeChecked.push(tri);
                 }
+                result = pair[0];
+                break;
             }
-            cavitySize = cavity.size();
         }
-        ear = new Triangle(cavity.get(0).point, 
-                cavity.get(1).point, cavity.get(2).point);
-        triGraph.add(ear);
-        updateCavity(site, ear, cavity.get(0));
-        updateCavity(site, ear, cavity.get(1));
-        updateCavity(site, ear, cavity.get(2));
-        //print();
-        return ear;
+        return result;
     }
-        
-    private void updateCavity(Pnt site, Triangle ear, TriangleControl ce) {
-        Triangle opposite = neighborOpposite(site, ce.triangle);
-        if (opposite == null) {
-            if (ce.newTriangle)
-                triGraph.add(ear, ce.triangle);
-            else
-                triGraph.remove(ce.triangle);
-        } else {
-            triGraph.add(ear, opposite);
-            triGraph.remove(ce.triangle);
+
+    /**
+     * Flip the edge opposite a vertex of triangle: triangles (a, b, c) and
+     * (d, c, b) sharing edge (b, c) become (a, b, d) and (a, d, c).
+     * The quadrilateral (a, b, d, c) must be convex.
+     * @param triangle the triangle (a, b, c)
+     * @param slot the slot of a in triangle
+     * @return the two new triangles
+     */
+    Triangle[] flip (Triangle triangle, int slot) {
+        Triangle neighbor = triangle.neighbors[slot];
+        Pnt a = triangle.get(slot);
+        Pnt b = triangle.get((slot + 1) % 3);
+        Pnt c = triangle.get((slot + 2) % 3);
+        Pnt d = neighbor.get(neighbor.slotFacing(triangle));
+        Triangle acrossAB = triangle.neighbors[(slot + 2) % 3];
+        Triangle acrossAC = triangle.neighbors[(slot + 1) % 3];
+        Triangle acrossDB = neighbor.neighbors[neighbor.indexOf(c)];
+        Triangle acrossDC = neighbor.neighbors[neighbor.indexOf(b)];
+        removeTriangle(triangle);
+        removeTriangle(neighbor);
+        Triangle abd = new Triangle(a, b, d);
+        Triangle adc = new Triangle(a, d, c);
+        addTriangle(abd);
+        addTriangle(adc);
+        link(abd, adc);
+        link(abd, acrossAB);
+        link(abd, acrossDB);
+        link(adc, acrossAC);
+        link(adc, acrossDC);
+        mostRecent = abd;
+        return new Triangle[] {abd, adc};
+    }
+
+    /**
+     * Replace vertices in place, keeping all triangles and links (used by
+     * KineticDelaunay to bring moving sites up to date). The caller must
+     * make sure the result is still a valid DT.
+     * @param replacement the new vertex for each vertex to replace
+     */
+    void replaceVertices (Map<Pnt, Pnt> replacement) {
+        for (Triangle triangle: triangles) {
+            for (int i = 0; i < 3; i++) {
+                Pnt vertex = replacement.get(triangle.get(i));
+                if (vertex != null) triangle.replace(i, vertex);
+            }
+        }
+        // Take out all old entries first: a new vertex may equal an old one
+        Map<Pnt, Triangle> moved = new HashMap<Pnt, Triangle>();
+        for (Map.Entry<Pnt, Pnt> entry: replacement.entrySet()) {
+            Triangle triangle = incident.remove(entry.getKey());
+            if (triangle != null) moved.put(entry.getValue(), triangle);
+        }
+        incident.putAll(moved);
+        cells.clear();
+        starIndex.clear();
+        modCount++;
+    }
+
+    /**
+     * Vertex of the link polygon of a site being removed.
+     */
+    private static class LinkNode {
+        Pnt point;                  // The vertex
+        Triangle across;            // Triangle across the edge to next
+        LinkNode prev, next;        // Neighbors along the polygon
+        int version = 0;            // Incremented when the ear changes
+        boolean removed = false;    // True once the ear was clipped
+
+        LinkNode (Pnt point, Triangle across) {
+            this.point = point;
+            this.across = across;
+        }
+    }
+
+    /**
+     * Priority queue entry for an ear of the link polygon.
+     */
+    private static class Ear implements Comparable<Ear> {
+        double power;               // Power of the site (smaller first)
+        LinkNode node;              // The tip of the ear
+        int version;                // The node version when queued
+
+        Ear (double power, LinkNode node, int version) {
+            this.power = power;
+            this.node = node;
+            this.version = version;
+        }
+
+        public int compareTo (Ear other) {
+            return Double.compare(power, other.power);
         }
     }
 
@@ -534,9 +1655,9 @@ public class DelaunayTriangulation extends AbstractSet<Triangle> {
         System.out.println("After adding 4 points, we have a " + dt);
         Triangle.moreInfo = true;
         int c = 0;
-        for (Triangle t: dt.triGraph.nodeSet()) {
+        for (Triangle t: dt) {
             System.out.println(++c + ":" + t);
-            for (Triangle n: dt.triGraph.neighbors(t)) {
+            for (Triangle n: dt.neighbors(t)) {
                 System.out.println("--> " + n);
             }
         }
@@ -0,0 +1,418 @@
+package triangulation;
+
+/**
+ * Distributed Voronoi Diagram
+ *
+ *  @author Frederico Martins Biber Sampaio
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2013  Frederico Martins Biber Sampaio
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+*/
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+
+/**
+ * Streams the Delaunay edges and the Voronoi cells of a DT to a Sink, one
+ * at a time, clipped to a box. No list of edges or polygons is built: each
+ * cell is made in scratch arrays, handed to the sink and forgotten, so a
+ * DT of any size is written in one pass over its triangles.
+ *
+ * The cell of a site is the box cut by the bisector of the site and each of
+ * its Delaunay neighbors (the half-plane on the side of the site). This
+ * needs no circumcenters and gives cells of sites on the convex hull, which
+ * are unbounded, the same way as the others. The vertices of the initial
+ * triangle (and INFINITE) are not sites: they have no cell and their edges
+ * are not written, but they still bound the cells around them, as in
+ * DelaunayTriangulation.voronoiCell.
+ *
+ * <pre>
+ *   DiagramExporter exporter = new DiagramExporter(dt);
+ *   exporter.setBounds(-100, -100, 100, 100);
+ *   exporter.export(new DiagramExporter.GeoJsonSink(writer));
+ * </pre>
+ *
+ * The DT must not change while it is exported.
+ */
+public class DiagramExporter {
+
+    /**
+     * Receives the exported edges and cells.
+     */
+    public interface Sink {
+
+        /**
+         * A Delaunay edge, clipped to the box.
+         */
+        void edge (double ax, double ay, double bx, double by)
+                throws IOException;
+
+        /**
+         * A Voronoi cell, clipped to the box: a convex polygon,
+         * counterclockwise, not closed (the last vertex is not repeated).
+         * @param site the site of the cell
+         * @param xy x and y of each vertex; only valid during the call
+         * @param size the number of vertices
+         */
+        void cell (Pnt site, double[] xy, int size) throws IOException;
+
+        /**
+         * End of the export; the sink writes what it still holds (the
+         * underlying stream is not closed).
+         */
+        void finish () throws IOException;
+    }
+
+    private final DelaunayTriangulation dt;
+    private final StarCursor cursor;
+    private boolean bounded = false;            // Bounds given
+    private double minX, minY, maxX, maxY;      // The box
+    private double[] polygon = new double[32];  // Cell being clipped
+    private double[] clipped = new double[32];  // Result of one clip
+    private final double[] segment = new double[4];    // Clipped edge
+    private final double[] p = new double[4];   // Liang-Barsky terms
+    private final double[] q = new double[4];
+
+    /**
+     * @param dt the triangulation to export
+     */
+    public DiagramExporter (DelaunayTriangulation dt) {
+        this.dt = dt;
+        cursor = new StarCursor(dt);
+    }
+
+    /**
+     * Set the box; without one, the bounding box of the sites is used.
+     * @throws IllegalArgumentException if the box is empty
+     */
+    public void setBounds (double minX, double minY, double maxX,
+                           double maxY) {
+        if (!(minX <= maxX && minY <= maxY))
+            throw new IllegalArgumentException("Empty box");
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        bounded = true;
+    }
+
+    /**
+     * Write the edges and then the cells, and finish the sink.
+     * @param sink the sink
+     * @throws IOException if the sink fails
+     */
+    public void export (Sink sink) throws IOException {
+        exportEdges(sink);
+        exportCells(sink);
+        sink.finish();
+    }
+
+    /**
+     * Write each Delaunay edge between two sites that crosses the box.
+     * @param sink the sink
+     * @return the number of edges written
+     * @throws IOException if the sink fails
+     */
+    public int exportEdges (Sink sink) throws IOException {
+        if (!bounded && !fitSites()) return 0;
+        int count = 0;
+        for (Triangle triangle: dt) {
+            for (int i = 0; i < 3; i++) {
+                // Each edge once: from the triangle with the lower index
+                Triangle neighbor = triangle.neighbors[i];
+                if (neighbor != null && neighbor.index < triangle.index)
+                    continue;
+                Pnt a = triangle.get((i + 1) % 3);
+                Pnt b = triangle.get((i + 2) % 3);
+                if (!isSite(a) || !isSite(b)) continue;
+                if (!clip(a.coord(0), a.coord(1), b.coord(0), b.coord(1)))
+                    continue;
+                sink.edge(segment[0], segment[1], segment[2], segment[3]);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Write the cell of each site that reaches into the box.
+     * @param sink the sink
+     * @return the number of cells written
+     * @throws IOException if the sink fails
+     */
+    public int exportCells (Sink sink) throws IOException {
+        if (!bounded && !fitSites()) return 0;
+        int count = 0;
+        for (Triangle triangle: dt) {
+            for (int i = 0; i < 3; i++) {
+                Pnt site = triangle.get(i);
+                // Each site once: from its incident triangle
+                if (!isSite(site) || dt.locate_by_vertex(site) != triangle)
+                    continue;
+                int size = cell(site, triangle);
+                if (size < 3) continue;
+                sink.cell(site, polygon, size);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return true iff vertex is a site (not INFINITE nor a vertex of the
+     * initial triangle)
+     */
+    private boolean isSite (Pnt vertex) {
+        if (vertex == DelaunayTriangulation.INFINITE) return false;
+        Triangle initial = dt.getInitialTriangle();
+        return initial == null || !initial.contains(vertex);
+    }
+
+    /**
+     * Use the bounding box of the sites as the box.
+     * @return false if there are no sites
+     */
+    private boolean fitSites () {
+        minX = minY = Double.POSITIVE_INFINITY;
+        maxX = maxY = Double.NEGATIVE_INFINITY;
+        for (Triangle triangle: dt)
+            for (Pnt vertex: triangle) {
+                if (!isSite(vertex)) continue;
+                minX = Math.min(minX, vertex.coord(0));
+                minY = Math.min(minY, vertex.coord(1));
+                maxX = Math.max(maxX, vertex.coord(0));
+                maxY = Math.max(maxY, vertex.coord(1));
+            }
+        return minX <= maxX;
+    }
+
+    /**
+     * Clip the box by the bisector of site and each of its neighbors.
+     * @return the number of vertices left in polygon
+     */
+    private int cell (Pnt site, Triangle triangle) {
+        double px = site.coord(0), py = site.coord(1);
+        polygon[0] = minX; polygon[1] = minY;
+        polygon[2] = maxX; polygon[3] = minY;
+        polygon[4] = maxX; polygon[5] = maxY;
+        polygon[6] = minX; polygon[7] = maxY;
+        int size = 4;
+        cursor.reset(site, triangle);
+        while (cursor.next() && size > 0) {
+            Pnt neighbor = cursor.vertex();
+            if (neighbor == DelaunayTriangulation.INFINITE) continue;
+            // Keep the points x with n.(x - m) <= 0, for n from the site to
+            // the neighbor and m the midpoint
+            double qx = neighbor.coord(0), qy = neighbor.coord(1);
+            size = clip(size, qx - px, qy - py, (px + qx) / 2, (py + qy) / 2);
+        }
+        return size;
+    }
+
+    /**
+     * Clip polygon by a half-plane (Sutherland-Hodgman).
+     * @return the new number of vertices of polygon
+     */
+    private int clip (int size, double nx, double ny, double mx, double my) {
+        if (clipped.length < 2 * size + 2) clipped = new double[4 * size + 4];
+        int out = 0;
+        double sx = polygon[2 * size - 2], sy = polygon[2 * size - 1];
+        double fs = nx * (sx - mx) + ny * (sy - my);
+        for (int k = 0; k < size; k++) {
+            double ex = polygon[2 * k], ey = polygon[2 * k + 1];
+            double fe = nx * (ex - mx) + ny * (ey - my);
+            if ((fs < 0 && fe > 0) || (fs > 0 && fe < 0)) {
+                double t = fs / (fs - fe);
+                clipped[out++] = sx + t * (ex - sx);
+                clipped[out++] = sy + t * (ey - sy);
+            }
+            if (fe <= 0) {
+                clipped[out++] = ex;
+                clipped[out++] = ey;
+            }
+            sx = ex;
+            sy = ey;
+            fs = fe;
+        }
+        double[] swap = polygon;
+        polygon = clipped;
+        clipped = swap;
+        return out / 2;
+    }
+
+    /**
+     * Clip a segment to the box (Liang-Barsky) into segment.
+     * @return false if no part of the segment is in the box
+     */
+    private boolean clip (double ax, double ay, double bx, double by) {
+        double dx = bx - ax, dy = by - ay;
+        p[0] = -dx; q[0] = ax - minX;
+        p[1] =  dx; q[1] = maxX - ax;
+        p[2] = -dy; q[2] = ay - minY;
+        p[3] =  dy; q[3] = maxY - ay;
+        double enter = 0, leave = 1;
+        for (int i = 0; i < 4; i++) {
+            if (p[i] == 0) {
+                if (q[i] < 0) return false;
+            } else {
+                double t = q[i] / p[i];
+                if (p[i] < 0) enter = Math.max(enter, t);
+                else leave = Math.min(leave, t);
+            }
+        }
+        if (enter > leave) return false;
+        segment[0] = ax + enter * dx;
+        segment[1] = ay + enter * dy;
+        segment[2] = ax + leave * dx;
+        segment[3] = ay + leave * dy;
+        return true;
+    }
+
+    /**
+     * Binary sink, buffered in blocks. Big-endian records: 'E' and the four
+     * coordinates of an edge; 'C', the x and y of the site, the number of
+     * vertices (int) and their x and y for a cell; a zero byte at the end.
+     */
+    public static class BinarySink implements Sink {
+
+        private final OutputStream out;
+        private final ByteBuffer block = ByteBuffer.allocate(64 * 1024);
+
+        /**
+         * @param out the stream to write (not closed by finish)
+         */
+        public BinarySink (OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void edge (double ax, double ay, double bx, double by)
+                throws IOException {
+            room(33);
+            block.put((byte) 'E');
+            block.putDouble(ax).putDouble(ay).putDouble(bx).putDouble(by);
+        }
+
+        @Override
+        public void cell (Pnt site, double[] xy, int size)
+                throws IOException {
+            room(21);
+            block.put((byte) 'C');
+            block.putDouble(site.coord(0)).putDouble(site.coord(1));
+            block.putInt(size);
+            for (int k = 0; k < 2 * size; k++) {
+                room(8);
+                block.putDouble(xy[k]);
+            }
+        }
+
+        @Override
+        public void finish () throws IOException {
+            room(1);
+            block.put((byte) 0);
+            flush();
+            out.flush();
+        }
+
+        private void room (int bytes) throws IOException {
+            if (block.remaining() < bytes) flush();
+        }
+
+        private void flush () throws IOException {
+            out.write(block.array(), 0, block.position());
+            block.clear();
+        }
+    }
+
+    /**
+     * GeoJSON sink: one FeatureCollection with a LineString feature for each
+     * edge and a Polygon feature for each cell (with the site as the "site"
+     * property).
+     */
+    public static class GeoJsonSink implements Sink {
+
+        private static final String HEADER =
+                "{\"type\":\"FeatureCollection\",\"features\":[\n";
+        private final Writer out;
+        private final StringBuilder text = new StringBuilder(256);
+        private boolean started = false;
+
+        /**
+         * @param out the writer (wrap it in a BufferedWriter; not closed by
+         * finish)
+         */
+        public GeoJsonSink (Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void edge (double ax, double ay, double bx, double by)
+                throws IOException {
+            begin();
+            text.append("{\"type\":\"Feature\",\"properties\":{},")
+                .append("\"geometry\":{\"type\":\"LineString\",")
+                .append("\"coordinates\":[");
+            point(ax, ay).append(',');
+            point(bx, by).append("]}}");
+            write();
+        }
+
+        @Override
+        public void cell (Pnt site, double[] xy, int size)
+                throws IOException {
+            begin();
+            text.append("{\"type\":\"Feature\",\"properties\":{\"site\":");
+            point(site.coord(0), site.coord(1))
+                .append("},\"geometry\":{\"type\":\"Polygon\",")
+                .append("\"coordinates\":[[");
+            for (int k = 0; k < size; k++)
+                point(xy[2 * k], xy[2 * k + 1]).append(',');
+            point(xy[0], xy[1]).append("]]}}");            // Closed ring
+            write();
+        }
+
+        @Override
+        public void finish () throws IOException {
+            if (!started) out.write(HEADER);
+            out.write("]}\n");
+            out.flush();
+        }
+
+        private void begin () {
+            text.setLength(0);
+            if (started) text.append(",\n");
+            else text.append(HEADER);
+            started = true;
+        }
+
+        private StringBuilder point (double x, double y) {
+            return text.append('[').append(x).append(',').append(y).append(']');
+        }
+
+        private void write () throws IOException {
+            out.append(text);
+        }
+    }
+
+}
@@ -0,0 +1,451 @@
+package triangulation;
+
+/**
+ * Distributed Voronoi Diagram
+ *
+ *  @author Frederico Martins Biber Sampaio
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2013  Frederico Martins Biber Sampaio
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+*/
+
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Kinetic Delaunay triangulation of sites moving with constant velocities.
+ *
+ * Each edge shared by two triangles has a certificate: the in-circle test of
+ * its quadrilateral. When the sites move linearly the test is a polynomial of
+ * degree 4 in time, and the certificate fails at the first time it turns
+ * positive, i.e. when the edge stops being Delaunay. Failure times are kept
+ * in a priority queue; advance() processes them in time order, flipping each
+ * failing edge and computing the certificates of the changed edges only. The
+ * work done is proportional to the number of flips, not to how often time
+ * advances.
+ *
+ * While time advances, the triangulation keeps the sites at their last known
+ * positions; getTriangulation() brings them up to date.
+ * Sites must stay inside the initial triangle and must not collide.
+ */
+public class KineticDelaunay {
+
+    private DelaunayTriangulation dt;           // The triangulation
+    private Map<Pnt, MovingSite> sites =        // DT vertex -> moving site
+            new IdentityHashMap<Pnt, MovingSite>();
+    private PriorityQueue<Certificate> events = // Pending failures
+            new PriorityQueue<Certificate>();
+    private double now = 0;                     // Current time
+    private long stamp = 0;                     // Orders certificates and
+                                                // velocity changes
+    private boolean stale = false;              // DT vertices lag behind now
+    private long flipCount = 0;                 // Flips done so far
+
+    /**
+     * All sites must stay within the initial triangle.
+     * @param triangle the initial triangle
+     */
+    public KineticDelaunay (Triangle triangle) {
+        dt = new DelaunayTriangulation(triangle);
+    }
+
+    /**
+     * @return the current time
+     */
+    public double getTime () {
+        return now;
+    }
+
+    /**
+     * @return the number of flips done by advance()
+     */
+    public long getFlipCount () {
+        return flipCount;
+    }
+
+    /**
+     * @return the triangulation, with the sites at their current positions
+     */
+    public DelaunayTriangulation getTriangulation () {
+        refresh();
+        return dt;
+    }
+
+    /**
+     * Add a moving site.
+     * @param position the position of the site now
+     * @param vx the velocity along x
+     * @param vy the velocity along y
+     * @return the new site; null if position matches an existing site
+     * @throws IllegalArgumentException if position is outside the triangle
+     */
+    public MovingSite addSite (Pnt position, double vx, double vy) {
+        refresh();
+        if (!dt.delaunayPlace(position)) return null;
+        MovingSite site = new MovingSite(position, now, vx, vy);
+        sites.put(position, site);
+        scheduleAround(position);
+        return site;
+    }
+
+    /**
+     * Remove a moving site.
+     * @param site the site to remove
+     * @return true, if the site was removed
+     */
+    public boolean removeSite (MovingSite site) {
+        if (sites.get(site.vertex) != site) return false;
+        refresh();
+        Pnt vertex = site.vertex;
+        List<Pnt> link = new ArrayList<Pnt>();
+        for (Triangle triangle: dt.surroundingTriangles(vertex,
+                dt.locate_by_vertex(vertex))) {
+            for (int i = 0; i < 3; i++)
+                if (triangle.get(i) != vertex) link.add(triangle.get(i));
+        }
+        dt.delaunayRemove(vertex);
+        sites.remove(vertex);
+        // The new triangles all have a vertex of the old link
+        for (Pnt pnt: link) scheduleAround(pnt);
+        return true;
+    }
+
+    /**
+     * Change the velocity of a site from now on.
+     * @param site the site
+     * @param vx the new velocity along x
+     * @param vy the new velocity along y
+     */
+    public void setVelocity (MovingSite site, double vx, double vy) {
+        site.x = site.x(now);
+        site.y = site.y(now);
+        site.since = now;
+        site.vx = vx;
+        site.vy = vy;
+        site.changed = ++stamp;                 // Old certificates are void
+        scheduleAround(site.vertex);
+    }
+
+    /**
+     * Advance time, flipping every edge whose certificate fails on the way.
+     * @param time the new time
+     * @throws IllegalArgumentException if time is before the current time
+     */
+    public void advance (double time) {
+        if (time < now)
+            throw new IllegalArgumentException("Time cannot go back");
+        while (!events.isEmpty() && events.peek().time <= time) {
+            Certificate certificate = events.poll();
+            if (!isValid(certificate)) continue;
+            now = Math.max(now, certificate.time);
+            Triangle[] pair = dt.flip(certificate.triangle, certificate.slot);
+            flipCount++;
+            schedule(pair[0]);
+            schedule(pair[1]);
+        }
+        if (time > now && !sites.isEmpty()) stale = true;
+        now = time;
+    }
+
+    /**
+     * Move the DT vertices to the positions of the sites now.
+     */
+    private void refresh () {
+        if (!stale) return;
+        Map<Pnt, Pnt> replacement = new IdentityHashMap<Pnt, Pnt>();
+        Map<Pnt, MovingSite> moved = new IdentityHashMap<Pnt, MovingSite>();
+        for (MovingSite site: sites.values()) {
+            Pnt position = site.getPosition(now);
+            replacement.put(site.vertex, position);
+            site.vertex = position;
+            moved.put(position, site);
+        }
+        dt.replaceVertices(replacement);
+        sites = moved;
+        stale = false;
+    }
+
+    /**
+     * Compute the certificates of all edges of the triangles around vertex.
+     */
+    private void scheduleAround (Pnt vertex) {
+        StarCursor cursor = new StarCursor(dt);
+        cursor.reset(vertex);
+        while (cursor.next())
+            schedule(cursor.triangle());
+    }
+
+    /**
+     * Compute the certificates of the edges of triangle and queue the ones
+     * that fail in the future.
+     */
+    private void schedule (Triangle triangle) {
+        for (int i = 0; i < 3; i++) {
+            Triangle neighbor = triangle.neighbors[i];
+            if (neighbor == null) continue;
+            Pnt d = neighbor.get(neighbor.slotFacing(triangle));
+            double[] p = inCircle(triangle.get(0), triangle.get(1),
+                    triangle.get(2), d);
+            double failure = failureTime(p);
+            if (failure < Double.POSITIVE_INFINITY)
+                events.add(new Certificate(now + failure, triangle, i,
+                        neighbor, ++stamp));
+        }
+    }
+
+    /**
+     * A certificate is void if its edge was flipped or one of its sites
+     * changed velocity after the certificate was computed.
+     */
+    private boolean isValid (Certificate certificate) {
+        Triangle triangle = certificate.triangle;
+        Triangle neighbor = certificate.neighbor;
+        if (!dt.contains(triangle) || !dt.contains(neighbor)) return false;
+        if (triangle.neighbors[certificate.slot] != neighbor) return false;
+        for (int i = 0; i < 3; i++) {
+            if (changedAfter(triangle.get(i), certificate.stamp)) return false;
+            if (changedAfter(neighbor.get(i), certificate.stamp)) return false;
+        }
+        return true;
+    }
+
+    private boolean changedAfter (Pnt vertex, long time) {
+        MovingSite site = sites.get(vertex);
+        return site != null && site.changed > time;
+    }
+
+    /* Certificate polynomials (coefficients by increasing degree, in time
+     * counted from now) */
+
+    /**
+     * In-circle test of the moving points: positive when d is inside the
+     * circle through a, b, c (whatever the orientation of a, b, c now).
+     */
+    private double[] inCircle (Pnt a, Pnt b, Pnt c, Pnt d) {
+        double[][] pa = motion(a), pb = motion(b), pc = motion(c),
+                pd = motion(d);
+        double[] adx = sub(pa[0], pd[0]), ady = sub(pa[1], pd[1]);
+        double[] bdx = sub(pb[0], pd[0]), bdy = sub(pb[1], pd[1]);
+        double[] cdx = sub(pc[0], pd[0]), cdy = sub(pc[1], pd[1]);
+        double[] alift = add(mul(adx, adx), mul(ady, ady));
+        double[] blift = add(mul(bdx, bdx), mul(bdy, bdy));
+        double[] clift = add(mul(cdx, cdx), mul(cdy, cdy));
+        double[] det = add(add(
+                mul(alift, sub(mul(bdx, cdy), mul(cdx, bdy))),
+                mul(blift, sub(mul(cdx, ady), mul(adx, cdy)))),
+                mul(clift, sub(mul(adx, bdy), mul(bdx, ady))));
+        double orient = Predicates.orient2D(pa[0][0], pa[1][0],
+                pb[0][0], pb[1][0], pc[0][0], pc[1][0]);
+        if (orient < 0)
+            for (int i = 0; i < det.length; i++) det[i] = -det[i];
+        return det;
+    }
+
+    /**
+     * @return the x and y coordinates of vertex as polynomials in time
+     */
+    private double[][] motion (Pnt vertex) {
+        MovingSite site = sites.get(vertex);
+        if (site == null)
+            return new double[][] {{vertex.coord(0), 0}, {vertex.coord(1), 0}};
+        return new double[][] {{site.x(now), site.vx}, {site.y(now), site.vy}};
+    }
+
+    private static double[] add (double[] p, double[] q) {
+        double[] r = new double[Math.max(p.length, q.length)];
+        for (int i = 0; i < p.length; i++) r[i] += p[i];
+        for (int i = 0; i < q.length; i++) r[i] += q[i];
+        return r;
+    }
+
+    private static double[] sub (double[] p, double[] q) {
+        double[] r = new double[Math.max(p.length, q.length)];
+        for (int i = 0; i < p.length; i++) r[i] += p[i];
+        for (int i = 0; i < q.length; i++) r[i] -= q[i];
+        return r;
+    }
+
+    private static double[] mul (double[] p, double[] q) {
+        double[] r = new double[p.length + q.length - 1];
+        for (int i = 0; i < p.length; i++)
+            for (int j = 0; j < q.length; j++)
+                r[i + j] += p[i] * q[j];
+        return r;
+    }
+
+    private static double evaluate (double[] p, double t) {
+        double value = 0;
+        for (int i = p.length - 1; i >= 0; i--) value = value * t + p[i];
+        return value;
+    }
+
+    /**
+     * First time the certificate p turns positive. The edge is legal now, so
+     * the interval up to the first root is taken as legal even if rounding
+     * makes p slightly positive there (as right after a flip).
+     * @return time from now; infinity if the certificate never fails
+     */
+    static double failureTime (double[] p) {
+        int degree = p.length - 1;
+        while (degree > 0 && p[degree] == 0) degree--;
+        if (degree == 0) return Double.POSITIVE_INFINITY;
+        double[] q = new double[degree + 1];
+        System.arraycopy(p, 0, q, 0, degree + 1);
+        // Cauchy bound: all the roots are below it
+        double bound = 0;
+        for (int i = 0; i < degree; i++)
+            bound = Math.max(bound, Math.abs(q[i] / q[degree]));
+        bound += 1;
+        List<Double> points = new ArrayList<Double>();
+        points.add(0.0);
+        roots(q, 0, bound, points);
+        points.add(bound);
+        boolean legal = true;                   // Up to the first root
+        for (int k = 1; k + 1 < points.size(); k++) {
+            double start = points.get(k), end = points.get(k + 1);
+            boolean positive = evaluate(q, (start + end) / 2) > 0;
+            if (positive && legal) return start;
+            legal = !positive;
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Add the roots of p inside (lo, hi) to roots, in increasing order. The
+     * roots of the derivative split (lo, hi) into intervals where p is
+     * monotone, and each interval where p changes sign holds one root.
+     */
+    private static void roots (double[] p, double lo, double hi,
+                               List<Double> roots) {
+        int degree = p.length - 1;
+        while (degree > 0 && p[degree] == 0) degree--;
+        if (degree == 0) return;
+        if (degree == 1) {
+            double root = -p[0] / p[1];
+            if (root > lo && root < hi) roots.add(root);
+            return;
+        }
+        double[] derivative = new double[degree];
+        for (int i = 1; i <= degree; i++) derivative[i - 1] = i * p[i];
+        List<Double> points = new ArrayList<Double>();
+        points.add(lo);
+        roots(derivative, lo, hi, points);
+        points.add(hi);
+        for (int k = 0; k + 1 < points.size(); k++) {
+            double a = points.get(k), b = points.get(k + 1);
+            double fa = evaluate(p, a), fb = evaluate(p, b);
+            if (fa == 0 && a > lo) roots.add(a);
+            if ((fa < 0 && fb > 0) || (fa > 0 && fb < 0))
+                roots.add(bisect(p, a, b, fa));
+        }
+    }
+
+    private static double bisect (double[] p, double a, double b, double fa) {
+        for (int i = 0; i < 1100; i++) {
+            double mid = a + (b - a) / 2;
+            if (mid <= a || mid >= b) break;
+            double fm = evaluate(p, mid);
+            if (fm == 0) return mid;
+            if ((fm < 0) == (fa < 0)) {
+                a = mid;
+                fa = fm;
+            } else
+                b = mid;
+        }
+        return a + (b - a) / 2;
+    }
+
+    /**
+     * A site moving with constant velocity.
+     */
+    public static class MovingSite {
+        private Pnt vertex;                     // Its vertex in the DT
+        private double x, y;                    // Position at time since
+        private double since;
+        private double vx, vy;                  // Velocity
+        private long changed = 0;               // Stamp of the last change
+
+        private MovingSite (Pnt position, double since, double vx,
+                            double vy) {
+            this.vertex = position;
+            this.x = position.coord(0);
+            this.y = position.coord(1);
+            this.since = since;
+            this.vx = vx;
+            this.vy = vy;
+        }
+
+        private double x (double time) {
+            return x + vx * (time - since);
+        }
+
+        private double y (double time) {
+            return y + vy * (time - since);
+        }
+
+        /**
+         * @param time a time not before the last velocity change
+         * @return the position of the site at time
+         */
+        public Pnt getPosition (double time) {
+            return new Pnt(x(time), y(time));
+        }
+
+        public double getVelocityX () {
+            return vx;
+        }
+
+        public double getVelocityY () {
+            return vy;
+        }
+    }
+
+    /**
+     * The failure time of the edge between triangle and its neighbor
+     * opposite slot.
+     */
+    private static class Certificate implements Comparable<Certificate> {
+        double time;
+        Triangle triangle;
+        int slot;
+        Triangle neighbor;
+        long stamp;                             // When it was computed
+
+        Certificate (double time, Triangle triangle, int slot,
+                     Triangle neighbor, long stamp) {
+            this.time = time;
+            this.triangle = triangle;
+            this.slot = slot;
+            this.neighbor = neighbor;
+            this.stamp = stamp;
+        }
+
+        public int compareTo (Certificate other) {
+            return Double.compare(time, other.time);
+        }
+    }
+
+}
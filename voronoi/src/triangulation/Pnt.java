@@ -32,6 +32,13 @@ package triangulation;
  * Created July 2005.  Derived from an earlier, messier version.
  *
  * Modified Novemeber 2007.  Minor clean up.
+ *
+ * Modified by Frederico Sampaio: closed-form 2D predicates (orientation,
+ * in-circle, circumcenter) used automatically for 2D Pnts; they work on the
+ * raw coordinates and create no temporary Pnts or matrices. The orientation
+ * and in-circle signs are exact (see Predicates), so in 2D relation() reports
+ * "on the facet" only for points exactly on it. A two-argument constructor
+ * builds 2D Pnts without a varargs array (see also Pnt2D).
  */
 public class Pnt {
 
@@ -49,6 +56,16 @@ public class Pnt {
         System.arraycopy(coords, 0, coordinates, 0, coords.length);
     }
 
+    /**
+     * Constructor of a 2D Pnt; unlike the varargs form it creates no
+     * temporary array.
+     * @param x the first coordinate
+     * @param y the second coordinate
+     */
+    public Pnt (double x, double y) {
+        coordinates = new double[] {x, y};
+    }
+
     @Override
     public String toString () {
         if (coordinates.length == 0) return "Pnt()";
@@ -288,6 +305,8 @@ public class Pnt {
      * @return the signed content of the simplex
      */
     public static double content (Pnt[] simplex) {
+        if (simplex.length == 3 && simplex[0].coordinates.length == 2)
+            return orient2D(simplex[0], simplex[1], simplex[2]) / 2;
         Pnt[] matrix = new Pnt[simplex.length];
         for (int i = 0; i < matrix.length; i++)
             matrix[i] = simplex[i].extend(1);
@@ -327,6 +346,14 @@ public class Pnt {
         int dim = simplex.length - 1;
         if (this.dimension() != dim)
             throw new IllegalArgumentException("Dimension mismatch");
+        if (dim == 2) {
+            double content = orient2D(simplex[0], simplex[1], simplex[2]);
+            int[] result = new int[3];
+            for (int i = 0; i < 3; i++)
+                result[i] = relation2D(i, simplex[0], simplex[1], simplex[2],
+                                       content);
+            return result;
+        }
 
         /* Create and load the matrix */
         Pnt[] matrix = new Pnt[dim+1];
@@ -369,6 +396,8 @@ public class Pnt {
      * @return simplex Pnt that "witnesses" outsideness (or null if not outside)
      */
     public Pnt isOutside (Pnt[] simplex) {
+        if (simplex.length == 3 && this.coordinates.length == 2)
+            return isOutside(simplex[0], simplex[1], simplex[2]);
         int[] result = this.relation(simplex);
         for (int i = 0; i < result.length; i++) {
             if (result[i] > 0) return simplex[i];
@@ -382,8 +411,18 @@ public class Pnt {
      * @return the simplex Pnt that "witnesses" on-ness (or null if not on)
      */
     public Pnt isOn (Pnt[] simplex) {
-        int[] result = this.relation(simplex);
         Pnt witness = null;
+        if (simplex.length == 3 && this.coordinates.length == 2) {
+            double content = orient2D(simplex[0], simplex[1], simplex[2]);
+            for (int i = 0; i < 3; i++) {
+                int r = relation2D(i, simplex[0], simplex[1], simplex[2],
+                                   content);
+                if (r == 0) witness = simplex[i];
+                else if (r > 0) return null;
+            }
+            return witness;
+        }
+        int[] result = this.relation(simplex);
         for (int i = 0; i < result.length; i++) {
             if (result[i] == 0) witness = simplex[i];
             else if (result[i] > 0) return null;
@@ -397,6 +436,13 @@ public class Pnt {
      * @return true iff this Pnt is inside simplex.
      */
     public boolean isInside (Pnt[] simplex) {
+        if (simplex.length == 3 && this.coordinates.length == 2) {
+            double content = orient2D(simplex[0], simplex[1], simplex[2]);
+            for (int i = 0; i < 3; i++)
+                if (relation2D(i, simplex[0], simplex[1], simplex[2],
+                               content) >= 0) return false;
+            return true;
+        }
         int[] result = this.relation(simplex);
         for (int r: result) if (r >= 0) return false;
         return true;
@@ -408,6 +454,8 @@ public class Pnt {
      * @return -1, 0, or +1 for inside, on, or outside of circumcircle
      */
     public int vsCircumcircle (Pnt[] simplex) {
+        if (simplex.length == 3 && this.coordinates.length == 2)
+            return vsCircumcircle(simplex[0], simplex[1], simplex[2]);
         Pnt[] matrix = new Pnt[simplex.length + 1];
         for (int i = 0; i < simplex.length; i++)
             matrix[i] = simplex[i].extend(1, simplex[i].dot(simplex[i]));
@@ -427,6 +475,7 @@ public class Pnt {
         int dim = simplex[0].dimension();
         if (simplex.length - 1 != dim)
             throw new IllegalArgumentException("Dimension mismatch");
+        if (dim == 2) return circumcenter(simplex[0], simplex[1], simplex[2]);
         Pnt[] matrix = new Pnt[dim];
         for (int i = 0; i < dim; i++)
             matrix[i] = simplex[i].bisector(simplex[i+1]);
@@ -437,6 +486,145 @@ public class Pnt {
         return new Pnt(result);
     }
 
+    /* Closed-form 2D predicates */
+
+    /**
+     * Orientation of three 2D points: the sign of the determinant of
+     * <pre>
+     *   ax  ay  1
+     *   bx  by  1
+     *   cx  cy  1
+     * </pre>
+     * is exact (see {@link Predicates#orient2D}).
+     * @return positive if a, b, c are counterclockwise, negative if they are
+     * clockwise, zero if they are collinear
+     */
+    public static double orient2D (double ax, double ay, double bx, double by,
+                                   double cx, double cy) {
+        return Predicates.orient2D(ax, ay, bx, by, cx, cy);
+    }
+
+    /**
+     * Orientation of three 2D Pnts.
+     * @see #orient2D(double, double, double, double, double, double)
+     */
+    public static double orient2D (Pnt a, Pnt b, Pnt c) {
+        return orient2D(a.coordinates[0], a.coordinates[1],
+                        b.coordinates[0], b.coordinates[1],
+                        c.coordinates[0], c.coordinates[1]);
+    }
+
+    /**
+     * In-circle determinant of four 2D points; the sign of
+     * <pre>
+     *   ax-dx  ay-dy  (ax-dx)^2 + (ay-dy)^2
+     *   bx-dx  by-dy  (bx-dx)^2 + (by-dy)^2
+     *   cx-dx  cy-dy  (cx-dx)^2 + (cy-dy)^2
+     * </pre>
+     * is exact (see {@link Predicates#inCircle2D}).
+     * @return positive if d is inside the circle through a, b, c (when a, b, c
+     * are counterclockwise), negative if outside, zero if cocircular
+     */
+    public static double inCircle2D (double ax, double ay, double bx,
+                                     double by, double cx, double cy,
+                                     double dx, double dy) {
+        return Predicates.inCircle2D(ax, ay, bx, by, cx, cy, dx, dy);
+    }
+
+    /**
+     * In-circle determinant of four 2D Pnts.
+     * @see #inCircle2D(double, double, double, double, double, double,
+     * double, double)
+     */
+    public static double inCircle2D (Pnt a, Pnt b, Pnt c, Pnt d) {
+        return inCircle2D(a.coordinates[0], a.coordinates[1],
+                          b.coordinates[0], b.coordinates[1],
+                          c.coordinates[0], c.coordinates[1],
+                          d.coordinates[0], d.coordinates[1]);
+    }
+
+    /**
+     * Relation between this 2D Pnt and one vertex of the triangle (a, b, c);
+     * same meaning as one entry of {@link #relation(Pnt[])}.
+     * @param i the vertex index (0, 1 or 2)
+     * @param content the orientation of (a, b, c)
+     * @return -1, 0 or +1
+     */
+    private int relation2D (int i, Pnt a, Pnt b, Pnt c, double content) {
+        // Signed area of the triangle with this Pnt substituted for vertex i
+        double value;
+        if (i == 0) value = orient2D(this, b, c);
+        else if (i == 1) value = orient2D(a, this, c);
+        else value = orient2D(a, b, this);
+        int result;
+        if (value == 0) result = 0;              // Exact: on the facet line
+        else if (value > 0) result = -1;
+        else result = 1;
+        if (content < 0) result = -result;
+        if (content == 0) result = Math.abs(result);
+        return result;
+    }
+
+    /**
+     * Test if this 2D Pnt is outside of the triangle (a, b, c).
+     * Same as isOutside(new Pnt[] {a, b, c}) without the array.
+     * @return triangle vertex that "witnesses" outsideness (or null if not
+     * outside)
+     */
+    public Pnt isOutside (Pnt a, Pnt b, Pnt c) {
+        double content = orient2D(a, b, c);
+        if (relation2D(0, a, b, c, content) > 0) return a;
+        if (relation2D(1, a, b, c, content) > 0) return b;
+        if (relation2D(2, a, b, c, content) > 0) return c;
+        return null;
+    }
+
+    /**
+     * Test relation between this 2D Pnt and circumcircle of the triangle
+     * (a, b, c). Same as vsCircumcircle(new Pnt[] {a, b, c}) without the
+     * matrix.
+     * @return -1, 0, or +1 for inside, on, or outside of circumcircle
+     */
+    public int vsCircumcircle (Pnt a, Pnt b, Pnt c) {
+        double d = inCircle2D(a, b, c, this);
+        int result = (d > 0)? -1 : ((d < 0)? +1 : 0);
+        if (orient2D(a, b, c) < 0) result = -result;
+        return result;
+    }
+
+    /**
+     * Test relation between this 2D Pnt and circumcircle of the triangle
+     * (a, b, c), breaking cocircular ties by symbolic perturbation (see
+     * {@link Predicates#inCirclePerturbed}). All tests made this way agree
+     * with one single Delaunay triangulation, even for cocircular sites.
+     * @return -1 or +1 for inside or outside of circumcircle; 0 only if the
+     * four points are collinear or repeated
+     */
+    public int vsPerturbedCircumcircle (Pnt a, Pnt b, Pnt c) {
+        int result = -Predicates.inCirclePerturbed(
+                a.coordinates[0], a.coordinates[1],
+                b.coordinates[0], b.coordinates[1],
+                c.coordinates[0], c.coordinates[1],
+                this.coordinates[0], this.coordinates[1]);
+        if (orient2D(a, b, c) < 0) result = -result;
+        return result;
+    }
+
+    /**
+     * Circumcenter of a 2D triangle.
+     * @return the circumcenter (a Pnt) of the triangle (a, b, c)
+     */
+    public static Pnt circumcenter (Pnt a, Pnt b, Pnt c) {
+        double ax = a.coordinates[0], ay = a.coordinates[1];
+        double bx = b.coordinates[0] - ax, by = b.coordinates[1] - ay;
+        double cx = c.coordinates[0] - ax, cy = c.coordinates[1] - ay;
+        double d = 2 * (bx * cy - by * cx);
+        double b2 = bx * bx + by * by;
+        double c2 = cx * cx + cy * cy;
+        return new Pnt(ax + (cy * b2 - by * c2) / d,
+                       ay + (bx * c2 - cx * b2) / d);
+    }
+
     /**
      * Main program (used for testing).
      */
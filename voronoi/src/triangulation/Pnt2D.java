@@ -0,0 +1,101 @@
+package triangulation;
+
+/**
+ * Distributed Voronoi Diagram
+ *
+ *  @author Frederico Martins Biber Sampaio
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2013  Frederico Martins Biber Sampaio
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+*/
+
+/**
+ * An immutable 2D point, lighter than a 2D Pnt: two fields instead of an
+ * array, and equality and hashing on the two coordinates directly. Negative
+ * zero is stored as zero, so equal points have equal hashes.
+ *
+ * Pnt stays the point type of DelaunayTriangulation; Pnt2D is for the code
+ * that handles many positions at once (CoordinateStore,
+ * CompactTriangulation) and converts with toPnt() only at the boundary.
+ */
+public final class Pnt2D {
+
+    public final double x, y;
+
+    public Pnt2D (double x, double y) {
+        this.x = x + 0.0;                   // No negative zeros
+        this.y = y + 0.0;
+    }
+
+    /**
+     * @param point a 2D Pnt
+     */
+    public Pnt2D (Pnt point) {
+        this(point.coord(0), point.coord(1));
+    }
+
+    /**
+     * @return this point as a Pnt
+     */
+    public Pnt toPnt () {
+        return new Pnt(x, y);
+    }
+
+    /**
+     * @param point a Pnt
+     * @return true iff point is 2D and at this position
+     */
+    public boolean isAt (Pnt point) {
+        return point.dimension() == 2
+                && point.coord(0) == x && point.coord(1) == y;
+    }
+
+    @Override
+    public String toString () {
+        return "(" + x + "," + y + ")";
+    }
+
+    @Override
+    public boolean equals (Object other) {
+        if (!(other instanceof Pnt2D)) return false;
+        Pnt2D p = (Pnt2D) other;
+        return x == p.x && y == p.y;
+    }
+
+    @Override
+    public int hashCode () {
+        return hash(x, y);
+    }
+
+    /**
+     * Hash of a position (as hashCode of a Pnt2D there), mixed so that
+     * nearby integer positions spread over a power of two table.
+     */
+    static int hash (double x, double y) {
+        long h = Double.doubleToLongBits(x + 0.0) * 0x9E3779B97F4A7C15L
+                ^ Double.doubleToLongBits(y + 0.0);
+        h ^= h >>> 31;
+        h *= 0xBF58476D1CE4E5B9L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+}
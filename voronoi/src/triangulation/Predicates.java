@@ -0,0 +1,203 @@
+package triangulation;
+
+/**
+ * Distributed Voronoi Diagram
+ *
+ *  @author Frederico Martins Biber Sampaio
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2013  Frederico Martins Biber Sampaio
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+*/
+
+import java.math.BigDecimal;
+
+/**
+ * Robust 2D geometric predicates.
+ *
+ * Each predicate is first evaluated in plain floating point together with a
+ * forward error bound (after J. R. Shewchuk, "Adaptive Precision
+ * Floating-Point Arithmetic and Fast Robust Geometric Predicates", 1997).
+ * When the result is larger than the bound, its sign is certainly correct and
+ * is returned at once; this is the common case. Otherwise the determinant is
+ * evaluated again with exact arithmetic (every double is exactly
+ * representable as a BigDecimal and sums/products of BigDecimals are exact).
+ *
+ * The sign of every result is exact; the magnitude is only an approximation.
+ *
+ * Ties of the in-circle test (four cocircular points) can be broken by
+ * symbolic perturbation, see {@link #inCirclePerturbed}.
+ */
+public final class Predicates {
+
+    private static final double epsilon = Math.ulp(1.0) / 2;   // 2^-53
+    private static final double orientErrorBound =
+            (3.0 + 16.0 * epsilon) * epsilon;
+    private static final double inCircleErrorBound =
+            (10.0 + 96.0 * epsilon) * epsilon;
+
+    private Predicates () {
+    }
+
+    /**
+     * Orientation of three 2D points.
+     * @return positive if a, b, c are counterclockwise, negative if they are
+     * clockwise, zero if they are collinear (the sign is exact)
+     */
+    public static double orient2D (double ax, double ay, double bx, double by,
+                                   double cx, double cy) {
+        double detLeft = (bx - ax) * (cy - ay);
+        double detRight = (by - ay) * (cx - ax);
+        double det = detLeft - detRight;
+        double errorBound = orientErrorBound *
+                (Math.abs(detLeft) + Math.abs(detRight));
+        if (det > errorBound || -det > errorBound) return det;
+        return orient2DExact(ax, ay, bx, by, cx, cy);
+    }
+
+    /**
+     * In-circle test of four 2D points.
+     * @return positive if d is inside the circle through a, b, c (when a, b, c
+     * are counterclockwise), negative if outside, zero if cocircular (the sign
+     * is exact)
+     */
+    public static double inCircle2D (double ax, double ay, double bx,
+                                     double by, double cx, double cy,
+                                     double dx, double dy) {
+        double adx = ax - dx, ady = ay - dy;
+        double bdx = bx - dx, bdy = by - dy;
+        double cdx = cx - dx, cdy = cy - dy;
+        double bdxcdy = bdx * cdy, cdxbdy = cdx * bdy;
+        double cdxady = cdx * ady, adxcdy = adx * cdy;
+        double adxbdy = adx * bdy, bdxady = bdx * ady;
+        double alift = adx * adx + ady * ady;
+        double blift = bdx * bdx + bdy * bdy;
+        double clift = cdx * cdx + cdy * cdy;
+        double det = alift * (bdxcdy - cdxbdy)
+                   + blift * (cdxady - adxcdy)
+                   + clift * (adxbdy - bdxady);
+        double permanent = (Math.abs(bdxcdy) + Math.abs(cdxbdy)) * alift
+                         + (Math.abs(cdxady) + Math.abs(adxcdy)) * blift
+                         + (Math.abs(adxbdy) + Math.abs(bdxady)) * clift;
+        double errorBound = inCircleErrorBound * permanent;
+        if (det > errorBound || -det > errorBound) return det;
+        return inCircle2DExact(ax, ay, bx, by, cx, cy, dx, dy);
+    }
+
+    /**
+     * In-circle test with ties broken by symbolic perturbation ("Simulation
+     * of Simplicity"). Each point is lifted to the paraboloid with an
+     * infinitesimal extra height; the lexicographically larger a point is
+     * (by x, then y), the larger its extra height. The result is therefore
+     * never zero unless the points are degenerate (all collinear, or repeated),
+     * and all the tests over a point set agree with one single triangulation.
+     * @return +1 if d is inside the circle through a, b, c (when a, b, c are
+     * counterclockwise), -1 if outside, 0 only for degenerate input
+     */
+    public static int inCirclePerturbed (double ax, double ay, double bx,
+                                         double by, double cx, double cy,
+                                         double dx, double dy) {
+        double det = inCircle2D(ax, ay, bx, by, cx, cy, dx, dy);
+        if (det > 0) return 1;
+        if (det < 0) return -1;
+        // The lifted determinant is -det; raising the lift of one point
+        // changes it by the cofactor of that point. Try the points from the
+        // largest perturbation to the smallest.
+        double[] x = {ax, bx, cx, dx};
+        double[] y = {ay, by, cy, dy};
+        for (int i = 1; i < 4; i++)           // A repeated point has the same
+            for (int j = 0; j < i; j++)       // perturbation: still a tie
+                if (compare(x, y, i, j) == 0) return 0;
+        int[] order = {0, 1, 2, 3};
+        for (int i = 1; i < 4; i++)           // Insertion sort, descending
+            for (int j = i; j > 0 && compare(x, y, order[j], order[j-1]) > 0;
+                 j--) {
+                int t = order[j]; order[j] = order[j-1]; order[j-1] = t;
+            }
+        for (int k = 0; k < 4; k++) {
+            double cofactor;
+            switch (order[k]) {
+            case 0:  cofactor = -orient2D(bx, by, cx, cy, dx, dy); break;
+            case 1:  cofactor =  orient2D(ax, ay, cx, cy, dx, dy); break;
+            case 2:  cofactor = -orient2D(ax, ay, bx, by, dx, dy); break;
+            default: cofactor =  orient2D(ax, ay, bx, by, cx, cy); break;
+            }
+            if (cofactor > 0) return -1;
+            if (cofactor < 0) return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Lexicographic comparison of points i and j.
+     */
+    private static int compare (double[] x, double[] y, int i, int j) {
+        if (x[i] != x[j]) return (x[i] < x[j])? -1 : 1;
+        if (y[i] != y[j]) return (y[i] < y[j])? -1 : 1;
+        return 0;
+    }
+
+    /* Exact evaluation */
+
+    private static double orient2DExact (double ax, double ay, double bx,
+                                         double by, double cx, double cy) {
+        BigDecimal eax = new BigDecimal(ax), eay = new BigDecimal(ay);
+        BigDecimal ebx = new BigDecimal(bx).subtract(eax);
+        BigDecimal eby = new BigDecimal(by).subtract(eay);
+        BigDecimal ecx = new BigDecimal(cx).subtract(eax);
+        BigDecimal ecy = new BigDecimal(cy).subtract(eay);
+        BigDecimal det = ebx.multiply(ecy).subtract(eby.multiply(ecx));
+        return approximate(det);
+    }
+
+    private static double inCircle2DExact (double ax, double ay, double bx,
+                                           double by, double cx, double cy,
+                                           double dx, double dy) {
+        BigDecimal edx = new BigDecimal(dx), edy = new BigDecimal(dy);
+        BigDecimal adx = new BigDecimal(ax).subtract(edx);
+        BigDecimal ady = new BigDecimal(ay).subtract(edy);
+        BigDecimal bdx = new BigDecimal(bx).subtract(edx);
+        BigDecimal bdy = new BigDecimal(by).subtract(edy);
+        BigDecimal cdx = new BigDecimal(cx).subtract(edx);
+        BigDecimal cdy = new BigDecimal(cy).subtract(edy);
+        BigDecimal alift = adx.multiply(adx).add(ady.multiply(ady));
+        BigDecimal blift = bdx.multiply(bdx).add(bdy.multiply(bdy));
+        BigDecimal clift = cdx.multiply(cdx).add(cdy.multiply(cdy));
+        BigDecimal det =
+            alift.multiply(bdx.multiply(cdy).subtract(cdx.multiply(bdy)))
+            .add(blift.multiply(cdx.multiply(ady).subtract(adx.multiply(cdy))))
+            .add(clift.multiply(adx.multiply(bdy).subtract(bdx.multiply(ady))));
+        return approximate(det);
+    }
+
+    /**
+     * Double approximation of an exact value that keeps its sign (an exact
+     * value too small for a double becomes the smallest double of that sign).
+     */
+    private static double approximate (BigDecimal value) {
+        int sign = value.signum();
+        if (sign == 0) return 0;
+        double d = value.doubleValue();
+        if (d == 0) return sign * Double.MIN_VALUE;
+        return d;
+    }
+
+}
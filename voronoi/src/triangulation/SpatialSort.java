@@ -0,0 +1,168 @@
+package triangulation;
+
+/**
+ * Distributed Voronoi Diagram
+ *
+ *  @author Frederico Martins Biber Sampaio
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2013  Frederico Martins Biber Sampaio
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+*/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Spatial orderings of 2D points.
+ *
+ * Consecutive points along a Hilbert curve are close to each other, so a
+ * triangulation walk that starts at the previous point is short. The biased
+ * randomized insertion order (BRIO, Amenta, Choi and Rote 2003) keeps enough
+ * randomness for the expected O(n log n) bound of incremental insertion: the
+ * points are shuffled and split into rounds of doubling size, and each round
+ * is sorted along the curve.
+ */
+public final class SpatialSort {
+
+    private static final int order = 15;        // Hilbert grid is 2^15 wide
+    private static final int minRound = 64;     // Size of the first round
+
+    private SpatialSort () {
+    }
+
+    /**
+     * Sort 2D points in place along a Hilbert curve covering their bounding
+     * box.
+     * @param points the points to sort
+     */
+    public static void hilbertSort (List<Pnt> points) {
+        int n = points.size();
+        if (n < 2) return;
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (Pnt p: points) {
+            minX = Math.min(minX, p.coord(0));
+            maxX = Math.max(maxX, p.coord(0));
+            minY = Math.min(minY, p.coord(1));
+            maxY = Math.max(maxY, p.coord(1));
+        }
+        double side = Math.max(maxX - minX, maxY - minY);
+        double scale = (side > 0)? ((1 << order) - 1) / side : 0;
+        // Sort keys carry the Hilbert index in the high bits and the
+        // position in the list in the low bits
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            Pnt p = points.get(i);
+            int x = (int) ((p.coord(0) - minX) * scale);
+            int y = (int) ((p.coord(1) - minY) * scale);
+            keys[i] = (hilbertIndex(x, y) << 32) | i;
+        }
+        Arrays.sort(keys);
+        Pnt[] sorted = new Pnt[n];
+        for (int i = 0; i < n; i++)
+            sorted[i] = points.get((int) keys[i]);
+        for (int i = 0; i < n; i++)
+            points.set(i, sorted[i]);
+    }
+
+    /**
+     * Order of 2D points along a Hilbert curve covering their bounding box,
+     * without making Pnts of them.
+     * @param xs the x coordinates
+     * @param ys the y coordinates
+     * @return the positions of the points (indices into xs and ys) in curve
+     * order
+     */
+    public static int[] hilbertOrder (double[] xs, double[] ys) {
+        int n = xs.length;
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, xs[i]);
+            maxX = Math.max(maxX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        double side = Math.max(maxX - minX, maxY - minY);
+        double scale = (side > 0)? ((1 << order) - 1) / side : 0;
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            int x = (int) ((xs[i] - minX) * scale);
+            int y = (int) ((ys[i] - minY) * scale);
+            keys[i] = (hilbertIndex(x, y) << 32) | i;
+        }
+        Arrays.sort(keys);
+        int[] result = new int[n];
+        for (int i = 0; i < n; i++) result[i] = (int) keys[i];
+        return result;
+    }
+
+    /**
+     * Biased randomized insertion order of 2D points: a random shuffle split
+     * into rounds of doubling size, each sorted along a Hilbert curve.
+     * @param points the points to order
+     * @param random source of randomness for the shuffle
+     * @return a new list holding the points in insertion order
+     */
+    public static List<Pnt> brio (Collection<? extends Pnt> points,
+                                  Random random) {
+        List<Pnt> result = new ArrayList<Pnt>(points);
+        Collections.shuffle(result, random);
+        int end = result.size();
+        while (end > 0) {
+            int begin = (end <= minRound)? 0 : end / 2;
+            hilbertSort(result.subList(begin, end));
+            end = begin;
+        }
+        return result;
+    }
+
+    /**
+     * Position of a grid cell along the Hilbert curve of the 2^order grid.
+     * @param x the cell column
+     * @param y the cell row
+     * @return the Hilbert index of the cell
+     */
+    static long hilbertIndex (int x, int y) {
+        int n = 1 << order;
+        long d = 0;
+        for (int s = n / 2; s > 0; s /= 2) {
+            int rx = ((x & s) != 0)? 1 : 0;
+            int ry = ((y & s) != 0)? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            // Rotate the quadrant so the sub-curve has the standard shape
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = n - 1 - x;
+                    y = n - 1 - y;
+                }
+                int t = x; x = y; y = t;
+            }
+        }
+        return d;
+    }
+
+}
@@ -0,0 +1,157 @@
+package triangulation;
+
+/**
+ * Distributed Voronoi Diagram
+ *
+ *  @author Frederico Martins Biber Sampaio
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2013  Frederico Martins Biber Sampaio
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+*/
+
+/**
+ * Reusable cursor over the triangles around a DT vertex (the star of the
+ * vertex), in the same order as DelaunayTriangulation.surroundingTriangles
+ * but without building a list: it steps through the neighbor slots of the
+ * triangles and allocates nothing.
+ *
+ * <pre>
+ *   StarCursor cursor = new StarCursor(dt);
+ *   if (cursor.reset(site))
+ *       while (cursor.next())
+ *           use(cursor.triangle(), cursor.vertex());
+ * </pre>
+ *
+ * The DT must not change while a walk is in progress.
+ */
+public final class StarCursor {
+
+    private final DelaunayTriangulation dt;
+    private Pnt site = null;            // Center of the star
+    private Triangle start = null;      // First triangle of the walk
+    private Triangle current = null;    // Triangle of the cursor
+    private Triangle following = null;  // Next triangle; null at the end
+    private Pnt guide = null;           // Vertex shared with the previous
+    private Pnt vertex = null;          // Guide of the current triangle
+
+    /**
+     * @param dt the triangulation to walk
+     */
+    public StarCursor (DelaunayTriangulation dt) {
+        this.dt = dt;
+    }
+
+    /**
+     * Start a walk around a vertex.
+     * @param site a vertex of the DT
+     * @return true iff site is a vertex (otherwise next() returns false)
+     */
+    public boolean reset (Pnt site) {
+        return reset(site, dt.locate_by_vertex(site));
+    }
+
+    /**
+     * Start a walk around a vertex from a triangle.
+     * @param site a vertex of the DT
+     * @param triangle a triangle that has site as a vertex
+     * @return true iff triangle has site as a vertex (otherwise next()
+     * returns false)
+     */
+    public boolean reset (Pnt site, Triangle triangle) {
+        current = null;
+        int slot = (triangle == null)? -1 : triangle.indexOf(site);
+        if (slot < 0) {
+            this.site = null;
+            start = following = null;
+            return false;
+        }
+        this.site = site;
+        start = following = triangle;
+        guide = triangle.get((slot == 0)? 1 : 0);       // Affects cw or ccw
+        return true;
+    }
+
+    /**
+     * Move to the next triangle of the star.
+     * @return false when there are no more triangles
+     */
+    public boolean next () {
+        current = following;
+        if (current == null) return false;
+        int siteSlot = current.indexOf(site);
+        int guideSlot = current.indexOf(guide);
+        vertex = guide;
+        // Cross the edge between site and the third vertex
+        following = current.neighbors[guideSlot];
+        guide = current.get(3 - siteSlot - guideSlot);
+        if (following == start) following = null;
+        return true;
+    }
+
+    /**
+     * @return the center of the star
+     */
+    public Pnt site () {
+        return site;
+    }
+
+    /**
+     * @return the current triangle
+     */
+    public Triangle triangle () {
+        return current;
+    }
+
+    /**
+     * @return the vertex the current triangle shares with the previous one
+     * (with the last one, for the first triangle of a closed star); each
+     * Delaunay neighbor of site once, if the star is closed
+     */
+    public Pnt vertex () {
+        return vertex;
+    }
+
+    /**
+     * @return true iff the current triangle is a ghost (see
+     * DelaunayTriangulation.isGhost)
+     */
+    public boolean isGhost () {
+        return DelaunayTriangulation.isGhost(current);
+    }
+
+    /**
+     * @return x coordinate of the circumcenter of the current triangle (NaN
+     * for a ghost)
+     */
+    public double circumcenterX () {
+        return isGhost()? Double.NaN : current.circleX();
+    }
+
+    /**
+     * @return y coordinate of the circumcenter of the current triangle (NaN
+     * for a ghost)
+     */
+    public double circumcenterY () {
+        return isGhost()? Double.NaN : current.circleY();
+    }
+
+}
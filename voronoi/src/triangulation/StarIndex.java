@@ -0,0 +1,235 @@
+package triangulation;
+
+/**
+ * Distributed Voronoi Diagram
+ *
+ *  @author Frederico Martins Biber Sampaio
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2013  Frederico Martins Biber Sampaio
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+*/
+
+import java.util.Arrays;
+
+/**
+ * Index of the circumdisks of the triangles around one DT vertex (the star
+ * of the vertex), answering "which of these disks holds a point".
+ *
+ * All the disks pass through the vertex m. With w the circumcenter of a disk
+ * relative to m and u = q - m, point q is inside the disk iff
+ * |u|^2 - 2 u.w < 0. So only the disk with the largest u.w matters: the
+ * vertex of the polygon of circumcenters (the Voronoi cell of m) that is
+ * extreme in the direction of u. The outward normals of the polygon edges
+ * are sorted by angle, and a binary search over them finds that vertex.
+ * The answer is confirmed with the exact in-circle test of the extreme disk
+ * and its two neighbors; when rounding could hide the answer, or the star
+ * has ghost or nearly flat triangles, every triangle of the star is tested.
+ *
+ * The index belongs to DelaunayTriangulation, which drops it when a triangle
+ * of the star is added, removed or changed.
+ */
+class StarIndex {
+
+    private static final double epsilon = Math.ulp(1.0) / 2;   // 2^-53
+
+    private Pnt site = null;                    // Null if no index
+    private int size = 0;                       // Triangles in the star
+    private Triangle[] star = new Triangle[16]; // Star, counterclockwise
+    private double[] wx = new double[16];       // Circumcenters of the star,
+    private double[] wy = new double[16];       // relative to site
+    private double[] normal = new double[16];   // Sorted edge normal angles
+    private int first;                          // Edge of normal[0]
+    private boolean linear;                     // Test every triangle
+    private double reach2;                      // No disk goes beyond this
+    private double error;                       // Largest center error
+    private double length;                      // Largest |w|
+
+    /**
+     * @param vertex a DT vertex
+     * @return true iff this is the index of the star of vertex
+     */
+    boolean isFor (Pnt vertex) {
+        return site != null && site.equals(vertex);
+    }
+
+    /**
+     * Drop the index.
+     */
+    void clear () {
+        Arrays.fill(star, 0, size, null);
+        site = null;
+        size = 0;
+    }
+
+    /**
+     * Drop the index if triangle belongs to the indexed star.
+     * @param triangle a triangle being added, removed or changed
+     */
+    void invalidate (Triangle triangle) {
+        if (site != null && triangle.contains(site)) clear();
+    }
+
+    /**
+     * Index the star of a vertex.
+     * @param vertex the vertex
+     * @param cursor a cursor just reset to walk around vertex
+     */
+    void build (Pnt vertex, StarCursor cursor) {
+        clear();
+        site = vertex;
+        linear = false;
+        reach2 = 0;
+        error = 0;
+        length = 0;
+        double mx = vertex.coord(0), my = vertex.coord(1);
+        int n = 0;
+        while (cursor.next()) {
+            if (n == star.length) grow();
+            Triangle triangle = cursor.triangle();
+            star[n] = triangle;
+            int i = n++;
+            if (linear) continue;
+            if (cursor.isGhost() ||
+                    triangle.circleOuter2() == Double.POSITIVE_INFINITY) {
+                linear = true;
+                continue;
+            }
+            wx[i] = triangle.circleX() - mx;
+            wy[i] = triangle.circleY() - my;
+            double w = Math.sqrt(wx[i] * wx[i] + wy[i] * wy[i]);
+            double outer = Math.sqrt(triangle.circleOuter2());
+            reach2 = Math.max(reach2, (w + outer) * (w + outer));
+            error = Math.max(error, Math.abs(outer - w));
+            length = Math.max(length, w);
+        }
+        size = n;
+        if (n < 3) linear = true;
+        if (linear) return;
+        // Make the polygon of circumcenters counterclockwise
+        double area = 0;
+        for (int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            area += wx[i] * wy[j] - wy[i] * wx[j];
+        }
+        if (area < 0) {
+            for (int i = 0, j = n - 1; i < j; i++, j--) {
+                Triangle t = star[i]; star[i] = star[j]; star[j] = t;
+                double x = wx[i]; wx[i] = wx[j]; wx[j] = x;
+                double y = wy[i]; wy[i] = wy[j]; wy[j] = y;
+            }
+        }
+        // Outward normal of edge i (from circumcenter i to i + 1)
+        first = 0;
+        for (int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            double dx = wx[j] - wx[i], dy = wy[j] - wy[i];
+            if (dx == 0 && dy == 0) {       // Cocircular sites
+                linear = true;
+                return;
+            }
+            normal[i] = Math.atan2(-dx, dy);
+            if (normal[i] < normal[first]) first = i;
+        }
+        // Rotate so the angles start at the smallest one; they must then
+        // increase, or the polygon is not convex (rounding) and the
+        // search would be wrong
+        rotate(first, n);
+        for (int k = 1; k < n; k++)
+            if (normal[k] < normal[k - 1]) {
+                linear = true;
+                return;
+            }
+    }
+
+    private void grow () {
+        int capacity = 2 * star.length;
+        star = Arrays.copyOf(star, capacity);
+        wx = Arrays.copyOf(wx, capacity);
+        wy = Arrays.copyOf(wy, capacity);
+        normal = Arrays.copyOf(normal, capacity);
+    }
+
+    /**
+     * Rotate normal[0..n) left by k places.
+     */
+    private void rotate (int k, int n) {
+        reverse(0, k - 1);
+        reverse(k, n - 1);
+        reverse(0, n - 1);
+    }
+
+    private void reverse (int i, int j) {
+        for (; i < j; i++, j--) {
+            double t = normal[i]; normal[i] = normal[j]; normal[j] = t;
+        }
+    }
+
+    /**
+     * Find a triangle of the star whose circumcircle holds point.
+     * @param point a point
+     * @return a triangle of the star in conflict with point (see
+     * DelaunayTriangulation.inConflict); null if there is none
+     */
+    Triangle find (Pnt point) {
+        if (linear) return scan(point);
+        double ux = point.coord(0) - site.coord(0);
+        double uy = point.coord(1) - site.coord(1);
+        double u2 = ux * ux + uy * uy;
+        if (u2 > reach2 * (1 + 1e-9)) return null;
+        // Last edge whose normal angle is not above the direction of point;
+        // the circumcenter at its end is extreme in that direction
+        double theta = Math.atan2(uy, ux);
+        int low = 0, high = size - 1, k = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (normal[mid] <= theta) {
+                k = mid;
+                low = mid + 1;
+            } else high = mid - 1;
+        }
+        int extreme = (first + k + 1) % size;
+        double least = Double.POSITIVE_INFINITY;
+        for (int d = -1; d <= 1; d++) {
+            int i = (extreme + d + size) % size;
+            if (DelaunayTriangulation.inConflict(point, star[i]))
+                return star[i];
+            least = Math.min(least, u2 - 2 * (ux * wx[i] + uy * wy[i]));
+        }
+        // Every disk is at least this far from point, up to the errors of
+        // the circumcenters
+        double u = Math.sqrt(u2);
+        if (least > 4 * u * error + 16 * epsilon * (u2 + 2 * u * length))
+            return null;
+        return scan(point);
+    }
+
+    /**
+     * Test every triangle of the star.
+     */
+    private Triangle scan (Pnt point) {
+        for (int i = 0; i < size; i++)
+            if (DelaunayTriangulation.inConflict(point, star[i]))
+                return star[i];
+        return null;
+    }
+
+}
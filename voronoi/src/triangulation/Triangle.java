@@ -20,6 +20,7 @@ package triangulation;
  * DEALINGS IN THE SOFTWARE.
  */
 
+import java.util.AbstractSet;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
@@ -39,13 +40,29 @@ import java.util.NoSuchElementException;
  *
  * Created December 2007. Replaced general simplices with geometric triangle.
  *
+ * Modified by Frederico Sampaio: vertices are kept in three fixed slots and
+ * each triangle has three neighbor slots (neighbor i is across the edge
+ * opposite vertex i), maintained by DelaunayTriangulation. This replaces the
+ * per-triangle ArrayList and the triangle adjacency graph.
+ *
  */
-public class Triangle extends ArraySet<Pnt> {
+public class Triangle extends AbstractSet<Pnt> {
 
     private int idNumber;                   // The id number
     private Pnt circumcenter = null;        // The triangle's circumcenter
+    private double centerX = Double.NaN;    // Circumcircle (NaN until known)
+    private double centerY;
+    private double inner2;                  // Squared distances from the
+    private double outer2;                  // center that are surely inside
+                                            // (below) or outside (above)
+    private final Pnt[] vertices;           // The three vertices
+    final Triangle[] neighbors =            // Neighbor opposite each vertex
+        new Triangle[3];
+    int index = -1;                         // Position in the triangulation
+    int mark = 0;                           // Search stamp (see DT)
 
     private static int idGenerator = 0;     // Used to create id numbers
+    private static final double epsilon = Math.ulp(1.0) / 2;   // 2^-53
     public static boolean moreInfo = false; // True iff more info in toString
 
     /**
@@ -56,15 +73,111 @@ public class Triangle extends ArraySet<Pnt> {
         this(Arrays.asList(vertices));
     }
 
+    /**
+     * @param a the first vertex
+     * @param b the second vertex
+     * @param c the third vertex
+     * @throws IllegalArgumentException if there are not three distinct vertices
+     */
+    public Triangle (Pnt a, Pnt b, Pnt c) {
+        idNumber = idGenerator++;
+        vertices = new Pnt[] {a, b, c};
+        if (a.equals(b) || a.equals(c) || b.equals(c))
+            throw new IllegalArgumentException("Triangle must have 3 vertices");
+    }
+
     /**
      * @param collection a Collection holding the Simplex vertices
      * @throws IllegalArgumentException if there are not three distinct vertices
      */
     public Triangle (Collection<? extends Pnt> collection) {
-        super(collection);
         idNumber = idGenerator++;
-        if (this.size() != 3)
+        if (collection.size() != 3)
             throw new IllegalArgumentException("Triangle must have 3 vertices");
+        vertices = collection.toArray(new Pnt[3]);
+        if (vertices[0].equals(vertices[1]) || vertices[0].equals(vertices[2])
+                || vertices[1].equals(vertices[2]))
+            throw new IllegalArgumentException("Triangle must have 3 vertices");
+    }
+
+    /**
+     * Replace a vertex (used when DelaunayTriangulation moves a site).
+     * @param index the vertex slot (0, 1 or 2)
+     * @param vertex the new vertex
+     */
+    void replace (int index, Pnt vertex) {
+        vertices[index] = vertex;
+        circumcenter = null;
+        centerX = Double.NaN;
+    }
+
+    /**
+     * Get the vertex at the specified index.
+     * @param index the vertex slot (0, 1 or 2)
+     * @return the vertex at the specified index
+     * @throws IndexOutOfBoundsException if the index is out of bounds
+     */
+    public Pnt get (int index) throws IndexOutOfBoundsException {
+        return vertices[index];
+    }
+
+    /**
+     * Index of a vertex in this triangle.
+     * @param vertex the vertex to look for
+     * @return the vertex slot (0, 1 or 2); -1 if vertex is not in triangle
+     */
+    public int indexOf (Pnt vertex) {
+        for (int i = 0; i < 3; i++)
+            if (vertices[i] == vertex) return i;
+        for (int i = 0; i < 3; i++)
+            if (vertices[i].equals(vertex)) return i;
+        return -1;
+    }
+
+    /**
+     * Report the neighbor across the edge opposite a vertex slot.
+     * @param index the vertex slot (0, 1 or 2)
+     * @return the neighbor opposite that vertex; null if none
+     */
+    public Triangle neighbor (int index) {
+        return neighbors[index];
+    }
+
+    /**
+     * Slot of the only vertex of this triangle that is not in triangle, i.e.,
+     * the slot whose neighbor is triangle if the two are neighbors.
+     * @param triangle the other Triangle
+     * @return the vertex slot; -1 if the triangles do not share an edge
+     */
+    int slotFacing (Triangle triangle) {
+        int slot = -1;
+        for (int i = 0; i < 3; i++) {
+            if (triangle.contains(vertices[i])) continue;
+            if (slot >= 0) return -1;
+            slot = i;
+        }
+        return slot;
+    }
+
+    /**
+     * True iff any member of the collection is also in the Triangle.
+     * @param collection the Collection to check
+     * @return true iff any member of collection appears in this Triangle
+     */
+    public boolean containsAny (Collection<?> collection) {
+        for (Object item: collection)
+            if (this.contains(item)) return true;
+        return false;
+    }
+
+    @Override
+    public boolean contains (Object vertex) {
+        return (vertex instanceof Pnt) && indexOf((Pnt) vertex) >= 0;
+    }
+
+    @Override
+    public int size () {
+        return 3;
     }
 
     @Override
@@ -80,8 +193,36 @@ public class Triangle extends ArraySet<Pnt> {
      * @throws NoSuchElementException if no vertex found
      */
     public Pnt nextVertex (Pnt... badVertices) {
-        Collection<Pnt> bad = Arrays.asList(badVertices);
-        for (Pnt v: this) if (!bad.contains(v)) return v;
+        search:
+        for (Pnt v: vertices) {
+            for (Pnt bad: badVertices) if (v.equals(bad)) continue search;
+            return v;
+        }
+        throw new NoSuchElementException("No vertex found");
+    }
+
+    /**
+     * Get arbitrary vertex of this triangle, but not the bad vertex (as
+     * nextVertex(Pnt...), without the array).
+     * @param bad the bad vertex
+     * @return a vertex of this triangle other than bad
+     * @throws NoSuchElementException if no vertex found
+     */
+    public Pnt nextVertex (Pnt bad) {
+        for (Pnt v: vertices) if (!v.equals(bad)) return v;
+        throw new NoSuchElementException("No vertex found");
+    }
+
+    /**
+     * Get the vertex of this triangle that is neither bad vertex (as
+     * nextVertex(Pnt...), without the array).
+     * @param bad one bad vertex
+     * @param other the other bad vertex
+     * @return a vertex of this triangle other than bad and other
+     * @throws NoSuchElementException if no vertex found
+     */
+    public Pnt nextVertex (Pnt bad, Pnt other) {
+        for (Pnt v: vertices) if (!v.equals(bad) && !v.equals(other)) return v;
         throw new NoSuchElementException("No vertex found");
     }
 
@@ -116,14 +257,92 @@ public class Triangle extends ArraySet<Pnt> {
      */
     public Pnt getCircumcenter () {
         if (circumcenter == null)
-            circumcenter = Pnt.circumcenter(this.toArray(new Pnt[0]));
+            circumcenter = Pnt.circumcenter(get(0), get(1), get(2));
         return circumcenter;
     }
 
+    /**
+     * Quick in-circle test against the cached circumcircle: a comparison of
+     * squared distances, made only when the point is clearly away from the
+     * circle (beyond the rounding error of the cached center and radius).
+     * @param point a 2D point
+     * @return -1 if point is surely inside the circumcircle, +1 if surely
+     * outside, 0 if it is too close to the circle to tell
+     */
+    public int vsCachedCircumcircle (Pnt point) {
+        if (Double.isNaN(centerX)) computeCircle();
+        double dx = point.coord(0) - centerX, dy = point.coord(1) - centerY;
+        double d2 = dx * dx + dy * dy;
+        if (d2 > outer2) return 1;
+        if (d2 < inner2) return -1;
+        return 0;
+    }
+
+    /**
+     * @return x coordinate of the cached circumcenter
+     */
+    double circleX () {
+        if (Double.isNaN(centerX)) computeCircle();
+        return centerX;
+    }
+
+    /**
+     * @return y coordinate of the cached circumcenter
+     */
+    double circleY () {
+        if (Double.isNaN(centerX)) computeCircle();
+        return centerY;
+    }
+
+    /**
+     * @return squared distance from the cached circumcenter beyond which a
+     * point is surely outside the circumcircle (infinite if not known)
+     */
+    double circleOuter2 () {
+        if (Double.isNaN(centerX)) computeCircle();
+        return outer2;
+    }
+
+    /**
+     * Compute the circumcircle (as in Pnt.circumcenter) and how far a point
+     * must be from it for vsCachedCircumcircle to decide.
+     */
+    private void computeCircle () {
+        Pnt a = get(0), b = get(1), c = get(2);
+        double ax = a.coord(0), ay = a.coord(1);
+        double bx = b.coord(0) - ax, by = b.coord(1) - ay;
+        double cx = c.coord(0) - ax, cy = c.coord(1) - ay;
+        double left = bx * cy, right = by * cx;
+        double d = 2 * (left - right);
+        double b2 = bx * bx + by * by;
+        double c2 = cx * cx + cy * cy;
+        double ux = (cy * b2 - by * c2) / d, uy = (bx * c2 - cx * b2) / d;
+        centerX = ax + ux;
+        centerY = ay + uy;
+        // Relative error of ux and uy, from the error of d (as in
+        // Predicates) plus a few roundings; give up on nearly flat triangles
+        double dError = 8 * epsilon * (Math.abs(left) + Math.abs(right));
+        if (a.dimension() != 2 || !(Math.abs(d) > 1e6 * dError)) {
+            inner2 = Double.NEGATIVE_INFINITY;
+            outer2 = Double.POSITIVE_INFINITY;
+            return;
+        }
+        double relative = dError / Math.abs(d) + 16 * epsilon;
+        double radius = Math.sqrt(ux * ux + uy * uy);
+        double error = 4 * (relative * (Math.abs(ux) + Math.abs(uy)) +
+                epsilon * (Math.abs(centerX) + Math.abs(centerY) + radius));
+        outer2 = (radius + error) * (radius + error) * (1 + 64 * epsilon);
+        inner2 = (radius > error)?
+                (radius - error) * (radius - error) * (1 - 64 * epsilon) :
+                Double.NEGATIVE_INFINITY;
+    }
+
     /**
      * @return the triangle's direction
      */
     public double direction() {
+        if (this.get(0).dimension() == 2)
+            return Pnt.orient2D(this.get(0), this.get(1), this.get(2));
         int dim = this.size();
         Pnt[] matrix = new Pnt[dim];
         for (int i = 0; i < dim; i++) {
@@ -142,9 +361,12 @@ public class Triangle extends ArraySet<Pnt> {
     @Override
     public Iterator<Pnt> iterator () {
         return new Iterator<Pnt>() {
-            private Iterator<Pnt> it = Triangle.super.iterator();
-            public boolean hasNext() {return it.hasNext();}
-            public Pnt next() {return it.next();}
+            private int next = 0;
+            public boolean hasNext() {return next < 3;}
+            public Pnt next() {
+                if (next >= 3) throw new NoSuchElementException();
+                return vertices[next++];
+            }
             public void remove() {throw new UnsupportedOperationException();}
         };
     }
@@ -24,7 +24,6 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
@@ -240,6 +239,7 @@ class DelaunayPanel extends JPanel {
      */
     private void drawAllDelaunay (boolean withFill) {
         for (Triangle triangle : diagram.getTriangulation()) {
+            if (DelaunayTriangulation.isGhost(triangle)) continue;
             Pnt[] vertices = triangle.toArray(new Pnt[0]);
             draw(vertices, withFill? getColor(triangle) : null, Color.green);
         }
@@ -252,18 +252,16 @@ class DelaunayPanel extends JPanel {
      */
     private void drawAllVoronoi (boolean withFill, boolean withSites) {
         // Keep track of sites done; no drawing for initial triangles sites
-        HashSet<Pnt> done = new HashSet<Pnt>(diagram.getInitialTriangle());
+        HashSet<Pnt> done = new HashSet<Pnt>();
+        if (diagram.getInitialTriangle() != null) 
+            done.addAll(diagram.getInitialTriangle());
+        done.add(DelaunayTriangulation.INFINITE);
         DelaunayTriangulation dt = diagram.getTriangulation();
         for (Triangle triangle : dt) {
             for (Pnt site: triangle) {
                 if (done.contains(site)) continue;
                 done.add(site);
-                List<Triangle> list = dt.surroundingTriangles(site, triangle);
-                Pnt[] vertices = new Pnt[list.size()];
-                int i = 0;
-                for (Triangle tri: list) {
-                    vertices[i++] = tri.getCircumcenter();
-                } 
+                Pnt[] vertices = dt.voronoiCell(site);
                 draw(vertices, withFill? getColor(site) : null, null);
                 if (withSites) { 
                     if (diagram.numSitesIn(site) > 1) { 
@@ -283,7 +281,7 @@ class DelaunayPanel extends JPanel {
         // Loop through all triangles of the DT
         for (Triangle triangle: diagram.getTriangulation()) {
             // Skip circles involving the initial-triangle vertices
-            if (triangle.containsAny(diagram.getInitialTriangle())) continue;
+            if (diagram.isBoundary(triangle)) continue;
             Pnt c = triangle.getCircumcenter();
             double radius = c.subtract(triangle.get(0)).magnitude();
             draw(c, radius, null, Color.cyan);
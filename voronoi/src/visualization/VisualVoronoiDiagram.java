@@ -28,11 +28,13 @@
 package visualization;
 
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.concurrent.locks.ReentrantLock;
 
 import javax.swing.JPanel;
 
+import triangulation.DiagramExporter;
 import triangulation.Pnt;
 import algorithm.Location2D;
 import algorithm.Site;
@@ -63,7 +65,15 @@ public class VisualVoronoiDiagram extends VoronoiDiagram {
      * Create and initialize the DT.
      */
     public VisualVoronoiDiagram(String id) {
-        super(id);
+        this(id, false);
+    }
+    
+    /**
+     * Create and initialize the DT.
+     * @param unbounded true to use an unbounded DT
+     */
+    public VisualVoronoiDiagram(String id, boolean unbounded) {
+        super(id, unbounded);
         delaunayPanel = null;
         app.addDiagram(this);
     }
@@ -84,6 +94,26 @@ public class VisualVoronoiDiagram extends VoronoiDiagram {
         this.delaunayPanel = delaunayPanel;
     }
     
+    public void setMainSite(Pnt point) {
+        lock.lock();  // block until condition holds
+        try {
+            super.setMainSite(point);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public void setLocalCell(boolean localCell) {
+        lock.lock();  // block until condition holds
+        try {
+            super.setLocalCell(localCell);
+            if (delaunayPanel != null) 
+                delaunayPanel.repaint();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
     /**
      * CUSTON: add new Voronoi site.
      */
@@ -135,6 +165,21 @@ public class VisualVoronoiDiagram extends VoronoiDiagram {
         }
     }
     
+    /**
+     * CUSTON: move Voronoi site.
+     */
+    public boolean moveSite(Site site, Location2D oldPos, boolean onlyRelevant) {
+        lock.lock();  // block until condition holds
+        try {
+            boolean moved = super.moveSite(site, oldPos, onlyRelevant);
+            if (delaunayPanel != null) 
+                delaunayPanel.repaint();
+            return moved;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
     /**
      * CUSTON: del all Voronoi sites far form this point.
      */
@@ -149,5 +194,57 @@ public class VisualVoronoiDiagram extends VoronoiDiagram {
             lock.unlock();
         }
     }
+    
+    /**
+     * CUSTON: del all Voronoi sites far form main site.
+     */
+    public ArrayList<Site> delIrrelevantSites() {
+        lock.lock();  // block until condition holds
+        try {
+            ArrayList<Site> deleted = super.delIrrelevantSites();
+            if (!deleted.isEmpty() && delaunayPanel != null)
+                delaunayPanel.repaint();
+            return deleted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * CUSTON: site that owns a point.
+     */
+    public Site nearestSite(double x, double y) {
+        lock.lock();  // block until condition holds
+        try {
+            return super.nearestSite(x, y);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * CUSTON: sites that own many points.
+     */
+    public Site[] nearestSites(double[] xs, double[] ys) {
+        lock.lock();  // block until condition holds
+        try {
+            return super.nearestSites(xs, ys);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Export holding the lock, so the diagram does not change meanwhile.
+     */
+    public void export(DiagramExporter.Sink sink, double minX, double minY,
+            double maxX, double maxY) throws IOException {
+        lock.lock();  // block until condition holds
+        try {
+            super.export(sink, minX, minY, maxX, maxY);
+        } finally {
+            lock.unlock();
+        }
+    }
 
 }